@@ -0,0 +1,66 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.google.gson.Gson;
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.networking.DeckClient;
+import com.porfiriopartida.deck.util.FileManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Shared setup: generated catalogs and a throwaway config directory that {@link FileManager} is pointed at.
+ */
+final class BenchmarkFixtures {
+    private static final String[] ACTIONS = {"ToggleMute", "Transition", "ToggleCamera", "ToggleSceneItem", "MACRO"};
+
+    private BenchmarkFixtures() {
+    }
+
+    static List<Command> commands(int count) {
+        List<Command> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String action = ACTIONS[i % ACTIONS.length];
+            Command command = new Command("Button " + i, action, "icon_" + (i % 32) + ".png", "Input " + (i % 16));
+            command.setUuid();
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    /**
+     * Creates a temp config directory holding the given commands and macros, and makes it FileManager's config dir.
+     */
+    static Path configDirectory(List<Command> commands, Map<String, List<Command>> macros) throws IOException {
+        Path directory = Files.createTempDirectory("obs-deck-bench");
+        Gson gson = new Gson();
+        Files.write(directory.resolve(FileManager.COMMANDS_FILE), gson.toJson(commands).getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(FileManager.MACROS_FILE), gson.toJson(macros).getBytes(StandardCharsets.UTF_8));
+        FileManager.setConfigDirectoryPath(directory.toString());
+        return directory;
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A client that throws replies away, as cheaply as possible.
+     */
+    static final DeckClient DISCARDING_CLIENT = new DeckClient() {
+        @Override
+        public String getId() {
+            return "bench";
+        }
+
+        @Override
+        public void send(String message) {
+        }
+    };
+}
@@ -0,0 +1,48 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GET_COMMANDS reply: Gson serialization of the whole catalog, plus parsing it back as a client would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogSerializationBenchmark {
+    private static final Type COMMAND_LIST_TYPE = new TypeToken<ArrayList<Command>>(){}.getType();
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private final CommandCatalog catalog = new CommandCatalog();
+    private String json;
+
+    @Setup
+    public void setUp() {
+        catalog.replaceAll(BenchmarkFixtures.commands(size));
+        json = gson.toJson(catalog.getCommands());
+    }
+
+    @Benchmark
+    public String getCommandsReply() {
+        return "COMMAND_LIST:" + gson.toJson(catalog.getCommands());
+    }
+
+    @Benchmark
+    public List<Command> parseCommandList() {
+        return gson.fromJson(json, COMMAND_LIST_TYPE);
+    }
+}
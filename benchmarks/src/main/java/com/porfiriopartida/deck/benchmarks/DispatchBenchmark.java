@@ -0,0 +1,62 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.networking.ServerListener;
+import com.porfiriopartida.exception.ConfigurationValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line parsing and command dispatch as a socket client sees it, against a stubbed OBS.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private Path configDirectory;
+    private ServerListener serverListener;
+    private CommandRegistry registry;
+
+    @Setup
+    public void setUp() throws IOException, ConfigurationValidationException {
+        configDirectory = BenchmarkFixtures.configDirectory(BenchmarkFixtures.commands(10), new LinkedHashMap<>());
+        serverListener = new ServerListener(true, new StubOBSHandler());
+        registry = serverListener.getCommandRegistry();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverListener.stop();
+        BenchmarkFixtures.delete(configDirectory);
+    }
+
+    @Benchmark
+    public Object parseAndDispatchLine() {
+        return registry.dispatchLine(BenchmarkFixtures.DISCARDING_CLIENT, "ToggleMute Yeti Mic").join();
+    }
+
+    @Benchmark
+    public Object parseAndDispatchColonLine() {
+        return registry.dispatchLine(BenchmarkFixtures.DISCARDING_CLIENT, "ToggleSceneItem:Scene|Camera").join();
+    }
+
+    /**
+     * What {@link ServerListener#handleCommand(String, String)} does, minus printing the reply to stdout.
+     */
+    @Benchmark
+    public Object dispatch() {
+        return registry.dispatch(BenchmarkFixtures.DISCARDING_CLIENT, "Transition", "").join();
+    }
+
+    @Benchmark
+    public Object dispatchUnknownCommand() {
+        return registry.dispatch(BenchmarkFixtures.DISCARDING_CLIENT, "NoSuchCommand", "").join();
+    }
+}
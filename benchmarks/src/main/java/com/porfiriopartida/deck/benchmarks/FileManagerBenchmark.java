@@ -0,0 +1,49 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.util.FileManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing commands.json. Saves include the fsync and backup rotation, so they measure the disk too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileManagerBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private Path configDirectory;
+    private List<Command> commands;
+
+    @Setup
+    public void setUp() throws IOException {
+        commands = BenchmarkFixtures.commands(size);
+        configDirectory = BenchmarkFixtures.configDirectory(commands, new LinkedHashMap<>());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.delete(configDirectory);
+    }
+
+    @Benchmark
+    public List<Command> load() {
+        return FileManager.loadCommandsFromFile();
+    }
+
+    @Benchmark
+    public void save() {
+        FileManager.saveCommandsToFile(commands);
+    }
+}
@@ -0,0 +1,86 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.networking.DeckClient;
+import com.porfiriopartida.deck.networking.ServerListener;
+import com.porfiriopartida.exception.ConfigurationValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A macro from the MACRO command until its "executed" reply, against a stubbed OBS.
+ * "Batched" compiles to a single OBS request batch; "Segmented" is split by a zero delay and goes through the scheduler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MacroBenchmark {
+    @Param({"Batched", "Segmented"})
+    public String macro;
+
+    private Path configDirectory;
+    private ServerListener serverListener;
+    private CommandRegistry registry;
+
+    @Setup
+    public void setUp() throws IOException, ConfigurationValidationException {
+        Map<String, List<Command>> macros = new LinkedHashMap<>();
+        macros.put("Batched", Arrays.asList(
+                new Command("Mute", "ToggleMute", null, "Mic"),
+                new Command("Mute", "ToggleMute", null, "Desktop Audio"),
+                new Command("Camera", "ToggleCamera", null),
+                new Command("Transition", "Transition", null)));
+        macros.put("Segmented", Arrays.asList(
+                new Command("Mute", "ToggleMute", null, "Mic"),
+                new Command("DELAY 0"),
+                new Command("Camera", "ToggleCamera", null),
+                new Command("DELAY 0"),
+                new Command("Transition", "Transition", null)));
+        configDirectory = BenchmarkFixtures.configDirectory(BenchmarkFixtures.commands(10), macros);
+        serverListener = new ServerListener(true, new StubOBSHandler());
+        registry = serverListener.getCommandRegistry();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverListener.stop();
+        BenchmarkFixtures.delete(configDirectory);
+    }
+
+    @Benchmark
+    public Object runMacro() {
+        CompletionClient client = new CompletionClient("Macro " + macro + " executed.");
+        registry.dispatch(client, "MACRO", macro);
+        return client.completed.join();
+    }
+
+    private static class CompletionClient implements DeckClient {
+        private final String expected;
+        private final CompletableFuture<String> completed = new CompletableFuture<>();
+
+        CompletionClient(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public String getId() {
+            return "bench";
+        }
+
+        @Override
+        public void send(String message) {
+            if (expected.equals(message)) {
+                completed.complete(message);
+            }
+        }
+    }
+}
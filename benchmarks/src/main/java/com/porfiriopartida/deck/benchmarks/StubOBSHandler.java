@@ -0,0 +1,68 @@
+package com.porfiriopartida.deck.benchmarks;
+
+import com.porfiriopartida.deck.command.BatchedRequest;
+import com.porfiriopartida.deck.obs.OBSHandler;
+import io.obswebsocket.community.client.message.request.Request;
+import io.obswebsocket.community.client.message.request.sceneitems.SetSceneItemEnabledRequest;
+import io.obswebsocket.community.client.message.response.RequestResponse;
+import io.obswebsocket.community.client.message.response.sceneitems.SetSceneItemEnabledResponse;
+import io.obswebsocket.community.client.message.response.transitions.TriggerStudioModeTransitionResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link OBSHandler} that never connects and answers every action immediately, so benchmarks measure the
+ * server's own work rather than OBS.
+ */
+public class StubOBSHandler extends OBSHandler {
+    private static final RequestResponse.Status OK = RequestResponse.Status.builder().result(true).code(100).build();
+
+    private boolean muted;
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> toggleMute(String inputName) {
+        muted = !muted;
+        return CompletableFuture.completedFuture(muted);
+    }
+
+    @Override
+    public CompletableFuture<TriggerStudioModeTransitionResponse> transition() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<SetSceneItemEnabledResponse> toggleSceneItem(String sceneName, String sourceName) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<BatchedRequest> toggleSceneItemRequest(String sceneName, String sourceName) {
+        return CompletableFuture.completedFuture(BatchedRequest.of(SetSceneItemEnabledRequest.builder()
+                .sceneName(sceneName)
+                .sceneItemId(1)
+                .sceneItemEnabled(true)
+                .build()));
+    }
+
+    @Override
+    public CompletableFuture<List<RequestResponse.Data<?>>> sendBatch(List<Request<?>> requests, long timeoutMillis) {
+        List<RequestResponse.Data<?>> results = new ArrayList<>(requests.size());
+        for (Request<?> request : requests) {
+            results.add(RequestResponse.Data.builder()
+                    .requestType(request.getRequestType())
+                    .requestStatus(OK)
+                    .build());
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+}
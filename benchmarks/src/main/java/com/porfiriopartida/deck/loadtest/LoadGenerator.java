@@ -0,0 +1,281 @@
+package com.porfiriopartida.deck.loadtest;
+
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.networking.BinaryProtocol;
+import com.porfiriopartida.deck.networking.ServerListener;
+import com.porfiriopartida.deck.obs.OBSHandler;
+import com.porfiriopartida.deck.util.FileManager;
+import com.porfiriopartida.exception.ConfigurationValidationException;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many binary-protocol deck clients against a {@link ServerListener} and reports button-to-ack latency:
+ * the time from writing an EXECUTE_LINE frame to reading its RESULT frame.
+ * <p>
+ * With {@code --embedded} it first starts a {@link MockOBSServer} and a server wired to it in this JVM, so the whole
+ * path can be measured on a machine without OBS. Options (all {@code --name=value}):
+ * <ul>
+ * <li>{@code clients} (8), {@code requests} per client (1000), {@code window} in-flight requests per client (1)</li>
+ * <li>{@code line} the command sent ({@code ToggleMute Yeti Mic}), {@code host}/{@code port} of the deck server</li>
+ * <li>{@code embedded}, with {@code obs-port} (4460), {@code latency}, {@code jitter}, {@code failure-rate},
+ * {@code drop-rate} for the mock, and {@code policies}, a policies.json for the server (rate limits apply
+ * otherwise; rejected requests are reported as busy)</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int requestsPerClient;
+    private final int window;
+    private final byte[] line;
+
+    public LoadGenerator(String host, int port, int clients, int requestsPerClient, int window, String line) {
+        this.host = host;
+        this.port = port;
+        this.clients = clients;
+        this.requestsPerClient = requestsPerClient;
+        this.window = Math.max(1, Math.min(window, 1024));
+        this.line = line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Report run() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(clients * 2, MockOBSServer.daemonThreads("load-client"));
+        try {
+            List<Future<ClientResult>> results = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> runClient(executor, start)));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            long[] latencies = new long[clients * requestsPerClient];
+            int count = 0;
+            long failed = 0;
+            long busy = 0;
+            long errors = 0;
+            for (Future<ClientResult> future : results) {
+                ClientResult result = future.get();
+                System.arraycopy(result.latencies, 0, latencies, count, result.count);
+                count += result.count;
+                failed += result.failed;
+                busy += result.busy;
+                errors += result.error == null ? 0 : 1;
+                if (result.error != null) {
+                    System.err.println("Client failed: " + result.error);
+                }
+            }
+            long elapsed = System.nanoTime() - begin;
+            return new Report(Arrays.copyOf(latencies, count), failed, busy, errors, elapsed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ClientResult runClient(ExecutorService executor, CountDownLatch start) throws InterruptedException {
+        ClientResult result = new ClientResult(requestsPerClient);
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.write(BinaryProtocol.hello());
+            out.flush();
+            if (in.readUnsignedByte() != BinaryProtocol.MAGIC || in.readUnsignedByte() != BinaryProtocol.VERSION) {
+                throw new IOException("Server did not accept binary protocol v" + BinaryProtocol.VERSION);
+            }
+
+            long[] sentAt = new long[0x10000];
+            Semaphore inFlight = new Semaphore(window);
+            Future<?> reader = executor.submit(() -> {
+                try {
+                    while (result.count + result.failed + result.busy < requestsPerClient) {
+                        BinaryProtocol.Frame frame = BinaryProtocol.read(in);
+                        if (frame == null) {
+                            throw new EOFException("Server closed the connection");
+                        }
+                        if (frame.getType() != BinaryProtocol.RESULT) {
+                            continue;
+                        }
+                        long latency = System.nanoTime() - sentAt[frame.getCorrelationId()];
+                        if (frame.getPayload().get(0) == BinaryProtocol.STATUS_OK) {
+                            result.latencies[result.count++] = latency;
+                        } else if (frame.getPayload().get(0) == BinaryProtocol.STATUS_BUSY) {
+                            result.busy++;
+                        } else {
+                            result.failed++;
+                        }
+                        inFlight.release();
+                    }
+                } catch (IOException e) {
+                    result.error = e;
+                }
+                return null;
+            });
+
+            start.await();
+            for (int i = 0; i < requestsPerClient && result.error == null; i++) {
+                if (!inFlight.tryAcquire(Constants.DEFAULT_TIMEOUT * 5, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("No result within " + Constants.DEFAULT_TIMEOUT * 5 + "ms");
+                }
+                int correlationId = (i % 0xFFFF) + 1;
+                sentAt[correlationId] = System.nanoTime();
+                out.writeShort(3 + line.length);
+                out.writeByte(BinaryProtocol.EXECUTE_LINE);
+                out.writeShort(correlationId);
+                out.write(line);
+                out.flush();
+            }
+            reader.get(Constants.DEFAULT_TIMEOUT * 5, TimeUnit.MILLISECONDS);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            result.error = e;
+        }
+        return result;
+    }
+
+    private static class ClientResult {
+        private final long[] latencies;
+        private volatile int count;
+        private volatile int failed;
+        private volatile int busy;
+        private volatile Exception error;
+
+        ClientResult(int requests) {
+            latencies = new long[requests];
+        }
+    }
+
+    public static class Report {
+        private final long[] latencies;
+        private final long failed;
+        private final long busy;
+        private final long clientErrors;
+        private final long elapsedNanos;
+
+        Report(long[] latencies, long failed, long busy, long clientErrors, long elapsedNanos) {
+            this.latencies = latencies;
+            Arrays.sort(this.latencies);
+            this.failed = failed;
+            this.busy = busy;
+            this.clientErrors = clientErrors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long percentileMicros(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("requests ok=%d failed=%d busy=%d client errors=%d in %.2fs (%.0f req/s)%n"
+                            + "latency us p50=%d p90=%d p99=%d p99.9=%d max=%d",
+                    latencies.length, failed, busy, clientErrors, seconds, (latencies.length + failed + busy) / seconds,
+                    percentileMicros(50), percentileMicros(90), percentileMicros(99), percentileMicros(99.9),
+                    percentileMicros(100));
+        }
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws IOException, ConfigurationValidationException, InterruptedException, ExecutionException {
+        Map<String, String> options = parseOptions(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        int serverPort = Integer.parseInt(options.getOrDefault("port", String.valueOf(Constants.SERVICE_PORT)));
+
+        MockOBSServer mock = null;
+        ServerListener server = null;
+        if (options.containsKey("embedded")) {
+            int obsPort = Integer.parseInt(options.getOrDefault("obs-port", "4460"));
+            mock = new MockOBSServer(obsPort, Constants.OBS_PASSWORD);
+            mock.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), Long.parseLong(options.getOrDefault("jitter", "0")));
+            mock.setFailureRate(Double.parseDouble(options.getOrDefault("failure-rate", "0")));
+            mock.setDropRate(Double.parseDouble(options.getOrDefault("drop-rate", "0")));
+            mock.start();
+
+            Path configDirectory = Files.createTempDirectory("obs-deck-load");
+            if (options.containsKey("policies")) {
+                Files.copy(Paths.get(options.get("policies")), configDirectory.resolve(FileManager.POLICIES_FILE));
+            }
+            FileManager.setConfigDirectoryPath(configDirectory.toString());
+            OBSHandler handler = new OBSHandler(Constants.LOCALHOST, obsPort, Constants.OBS_PASSWORD);
+            server = new ServerListener(false, handler);
+            server.setMaxConnections(clients + 1);
+            server.setWebPort(0);
+            ServerListener listening = server;
+            Thread serverThread = new Thread(() -> {
+                try {
+                    listening.startListening(serverPort);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "deck-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            awaitConnected(handler, serverPort);
+        }
+
+        LoadGenerator generator = new LoadGenerator(
+                options.getOrDefault("host", Constants.LOCALHOST),
+                serverPort,
+                clients,
+                Integer.parseInt(options.getOrDefault("requests", "1000")),
+                Integer.parseInt(options.getOrDefault("window", "1")),
+                options.getOrDefault("line", "ToggleMute Yeti Mic"));
+        Report report = generator.run();
+        System.out.println(report);
+
+        if (mock != null) {
+            System.out.printf("mock obs requests=%d injected failures=%d dropped=%d%n",
+                    mock.getRequestCount(), mock.getFailedCount(), mock.getDroppedCount());
+            server.stop();
+            mock.stop();
+        }
+        System.exit(report.clientErrors == 0 ? 0 : 1);
+    }
+
+    /**
+     * Waits until the embedded server accepts connections and its OBS link is up, so warm-up isn't measured.
+     */
+    private static void awaitConnected(OBSHandler handler, int serverPort) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Constants.OBS_CONNECT_TIMEOUT * 3;
+        while (System.currentTimeMillis() < deadline) {
+            if (handler.getSupervisor().isConnected()) {
+                try {
+                    new Socket(Constants.LOCALHOST, serverPort).close();
+                    return;
+                } catch (IOException e) {
+                    // Not listening yet.
+                }
+            }
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("Embedded server did not come up");
+    }
+}
@@ -0,0 +1,630 @@
+package com.porfiriopartida.deck.loadtest;
+
+import com.google.gson.*;
+import com.porfiriopartida.deck.config.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for OBS that speaks obs-websocket v5 (Hello/Identify, requests, request batches and events) over a
+ * plain socket, for running the deck server without OBS. It knows the requests {@link com.porfiriopartida.deck.obs.OBSHandler}
+ * uses and keeps a small scene/input model so toggles and events behave like the real thing.
+ * <p>
+ * Every reply can be delayed by a fixed latency plus random jitter, turned into a failure, or dropped entirely.
+ * <p>
+ * Run standalone with {@code --port=4455 --password=secret --latency=5 --jitter=2 --failure-rate=0.01 --drop-rate=0}.
+ */
+public class MockOBSServer {
+    private static final Logger logger = LogManager.getLogger(MockOBSServer.class);
+
+    private static final int OP_HELLO = 0;
+    private static final int OP_IDENTIFY = 1;
+    private static final int OP_IDENTIFIED = 2;
+    private static final int OP_REIDENTIFY = 3;
+    private static final int OP_EVENT = 5;
+    private static final int OP_REQUEST = 6;
+    private static final int OP_REQUEST_RESPONSE = 7;
+    private static final int OP_REQUEST_BATCH = 8;
+    private static final int OP_REQUEST_BATCH_RESPONSE = 9;
+
+    private static final int STATUS_SUCCESS = 100;
+    private static final int STATUS_MISSING_REQUEST_FIELD = 300;
+    private static final int STATUS_UNKNOWN_REQUEST_TYPE = 204;
+    private static final int STATUS_STUDIO_MODE_NOT_ACTIVE = 506;
+    private static final int STATUS_RESOURCE_NOT_FOUND = 600;
+    private static final int STATUS_REQUEST_PROCESSING_FAILED = 702;
+    private static final int CLOSE_AUTHENTICATION_FAILED = 4009;
+
+    private static final int INTENT_UI = 1 << 10;
+    private static final int INTENT_SCENES = 1 << 2;
+    private static final int INTENT_INPUTS = 1 << 3;
+    private static final int INTENT_TRANSITIONS = 1 << 4;
+    private static final int INTENT_SCENE_ITEMS = 1 << 7;
+
+    private final int port;
+    private final String password;
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService replies = Executors.newScheduledThreadPool(2, daemonThreads("mock-obs-reply"));
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double failureRate;
+    private volatile double dropRate;
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    // OBS model, guarded by "this".
+    private final Map<String, Map<Integer, SceneItem>> scenes = new LinkedHashMap<>();
+    private final Map<String, Input> inputs = new LinkedHashMap<>();
+    private String programScene;
+    private String previewScene;
+    private boolean studioMode = true;
+
+    public MockOBSServer(int port, String password) {
+        this.port = port;
+        this.password = password;
+        addInput("Yeti Mic", "wasapi_input_capture", false);
+        addInput("Mic", "wasapi_input_capture", false);
+        addInput("Desktop Audio", "wasapi_output_capture", false);
+        addInput(Constants.CAMERA_SOURCE, "dshow_input", null);
+        addScene("Scene", "Yeti Mic", "Desktop Audio");
+        addScene("Scene 2", "Mic");
+        addScene(Constants.CAMERA_SCENE, Constants.CAMERA_SOURCE);
+        programScene = "Scene";
+        previewScene = "Scene 2";
+    }
+
+    public synchronized void addInput(String inputName, String inputKind, Boolean muted) {
+        inputs.put(inputName, new Input(inputKind, muted));
+    }
+
+    public synchronized void addScene(String sceneName, String... sourceNames) {
+        Map<Integer, SceneItem> items = new LinkedHashMap<>();
+        int id = 1;
+        for (String sourceName : sourceNames) {
+            items.put(id++, new SceneItem(sourceName, true));
+        }
+        scenes.put(sceneName, items);
+    }
+
+    /**
+     * Delays every reply by {@code latencyMillis} plus a uniform random {@code 0..jitterMillis}.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Fraction of requests answered with RequestProcessingFailed.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Fraction of requests that never get an answer, to exercise client timeouts.
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "mock-obs-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Mock OBS listening on {} (auth {}).", port, password == null ? "off" : "on");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Closing mock OBS socket failed.", e);
+        }
+        for (Session session : sessions) {
+            session.socket.close();
+        }
+        replies.shutdownNow();
+    }
+
+    /**
+     * Drops every client connection without a close handshake, as if OBS crashed.
+     */
+    public void dropConnections() {
+        for (Session session : sessions) {
+            session.socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "mock-obs-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (SocketException e) {
+                if (running) {
+                    logger.error("Mock OBS accept failed.", e);
+                }
+            } catch (IOException e) {
+                logger.error("Mock OBS accept failed.", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        WebSocketSession webSocket;
+        try {
+            webSocket = WebSocketSession.accept(socket);
+        } catch (IOException e) {
+            logger.warn("Websocket handshake failed: {}", e.getMessage());
+            closeQuietly(socket);
+            return;
+        }
+        Session session = new Session(webSocket);
+        try {
+            JsonObject hello = new JsonObject();
+            hello.addProperty("obsWebSocketVersion", "5.0.0");
+            hello.addProperty("rpcVersion", 1);
+            if (password != null) {
+                JsonObject authentication = new JsonObject();
+                authentication.addProperty("challenge", session.challenge);
+                authentication.addProperty("salt", session.salt);
+                hello.add("authentication", authentication);
+            }
+            session.send(OP_HELLO, hello);
+
+            String text;
+            while ((text = webSocket.readText()) != null) {
+                JsonObject message = new JsonParser().parse(text).getAsJsonObject();
+                int op = message.get("op").getAsInt();
+                JsonObject data = message.getAsJsonObject("d");
+                if (op == OP_IDENTIFY) {
+                    if (!authenticated(session, data)) {
+                        webSocket.close(CLOSE_AUTHENTICATION_FAILED, "Authentication failed.");
+                        return;
+                    }
+                    session.identified = true;
+                    sessions.add(session);
+                    JsonObject identified = new JsonObject();
+                    identified.addProperty("negotiatedRpcVersion", 1);
+                    session.send(OP_IDENTIFIED, identified);
+                } else if (!session.identified) {
+                    webSocket.close(4007, "Not identified.");
+                    return;
+                } else if (op == OP_REIDENTIFY) {
+                    JsonObject identified = new JsonObject();
+                    identified.addProperty("negotiatedRpcVersion", 1);
+                    session.send(OP_IDENTIFIED, identified);
+                } else if (op == OP_REQUEST) {
+                    onRequest(session, data);
+                } else if (op == OP_REQUEST_BATCH) {
+                    onRequestBatch(session, data);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Mock OBS session {} ended: {}", webSocket.getRemoteAddress(), e.getMessage());
+        } finally {
+            sessions.remove(session);
+            webSocket.close();
+        }
+    }
+
+    private boolean authenticated(Session session, JsonObject identify) {
+        if (password == null) {
+            return true;
+        }
+        JsonElement provided = identify.get("authentication");
+        String secret = base64Sha256(password + session.salt);
+        String expected = base64Sha256(secret + session.challenge);
+        return provided != null && expected.equals(provided.getAsString());
+    }
+
+    private void onRequest(Session session, JsonObject request) {
+        requestCount.incrementAndGet();
+        if (random.nextDouble() < dropRate) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        replies.schedule(() -> session.send(OP_REQUEST_RESPONSE, execute(request)), nextDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private void onRequestBatch(Session session, JsonObject batch) {
+        JsonArray requests = batch.getAsJsonArray("requests");
+        requestCount.addAndGet(requests.size());
+        if (random.nextDouble() < dropRate) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        boolean haltOnFailure = batch.has("haltOnFailure") && batch.get("haltOnFailure").getAsBoolean();
+        long delay = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            delay += nextDelay();
+        }
+        replies.schedule(() -> {
+            JsonArray results = new JsonArray();
+            for (JsonElement element : requests) {
+                JsonObject result = execute(element.getAsJsonObject());
+                results.add(result);
+                if (haltOnFailure && !result.getAsJsonObject("requestStatus").get("result").getAsBoolean()) {
+                    break;
+                }
+            }
+            JsonObject response = new JsonObject();
+            response.add("requestId", batch.get("requestId"));
+            response.add("results", results);
+            session.send(OP_REQUEST_BATCH_RESPONSE, response);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long nextDelay() {
+        long jitter = jitterMillis;
+        return latencyMillis + (jitter > 0 ? (long) (random.nextDouble() * (jitter + 1)) : 0);
+    }
+
+    private JsonObject execute(JsonObject request) {
+        String requestType = request.has("requestType") ? request.get("requestType").getAsString() : "";
+        JsonObject data = request.has("requestData") && request.get("requestData").isJsonObject()
+                ? request.getAsJsonObject("requestData") : new JsonObject();
+        Reply reply;
+        if (random.nextDouble() < failureRate) {
+            failedCount.incrementAndGet();
+            reply = Reply.failure(STATUS_REQUEST_PROCESSING_FAILED, "Injected failure");
+        } else {
+            try {
+                reply = handle(requestType, data);
+            } catch (MissingFieldException e) {
+                reply = Reply.failure(STATUS_MISSING_REQUEST_FIELD, "Missing field " + e.getMessage());
+            }
+        }
+
+        JsonObject status = new JsonObject();
+        status.addProperty("result", reply.code == STATUS_SUCCESS);
+        status.addProperty("code", reply.code);
+        if (reply.comment != null) {
+            status.addProperty("comment", reply.comment);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("requestType", requestType);
+        if (request.has("requestId")) {
+            response.add("requestId", request.get("requestId"));
+        }
+        response.add("requestStatus", status);
+        if (reply.data != null) {
+            response.add("responseData", reply.data);
+        }
+        return response;
+    }
+
+    private synchronized Reply handle(String requestType, JsonObject data) {
+        JsonObject out = new JsonObject();
+        switch (requestType) {
+            case "GetVersion":
+                out.addProperty("obsVersion", "30.0.0");
+                out.addProperty("obsWebSocketVersion", "5.0.0");
+                out.addProperty("rpcVersion", 1);
+                out.addProperty("platform", "mock");
+                out.addProperty("platformDescription", "MockOBSServer");
+                out.add("availableRequests", new JsonArray());
+                out.add("supportedImageFormats", new JsonArray());
+                return Reply.ok(out);
+            case "GetStudioModeEnabled":
+                out.addProperty("studioModeEnabled", studioMode);
+                return Reply.ok(out);
+            case "GetSceneList": {
+                out.addProperty("currentProgramSceneName", programScene);
+                out.addProperty("currentPreviewSceneName", studioMode ? previewScene : null);
+                JsonArray list = new JsonArray();
+                int index = scenes.size() - 1;
+                for (String sceneName : scenes.keySet()) {
+                    JsonObject scene = new JsonObject();
+                    scene.addProperty("sceneName", sceneName);
+                    scene.addProperty("sceneIndex", index--);
+                    list.add(scene);
+                }
+                out.add("scenes", list);
+                return Reply.ok(out);
+            }
+            case "GetInputList": {
+                JsonArray list = new JsonArray();
+                for (Map.Entry<String, Input> entry : inputs.entrySet()) {
+                    JsonObject input = new JsonObject();
+                    input.addProperty("inputName", entry.getKey());
+                    input.addProperty("inputKind", entry.getValue().kind);
+                    input.addProperty("unversionedInputKind", entry.getValue().kind);
+                    list.add(input);
+                }
+                out.add("inputs", list);
+                return Reply.ok(out);
+            }
+            case "GetInputMute":
+            case "ToggleInputMute":
+            case "SetInputMute": {
+                String inputName = string(data, "inputName");
+                Input input = inputs.get(inputName);
+                if (input == null || input.muted == null) {
+                    return Reply.failure(STATUS_RESOURCE_NOT_FOUND, "No audio input named " + inputName);
+                }
+                if (!requestType.equals("GetInputMute")) {
+                    boolean muted = requestType.equals("ToggleInputMute") ? !input.muted : bool(data, "inputMuted");
+                    if (muted != input.muted) {
+                        input.muted = muted;
+                        JsonObject event = new JsonObject();
+                        event.addProperty("inputName", inputName);
+                        event.addProperty("inputMuted", muted);
+                        broadcast("InputMuteStateChanged", INTENT_INPUTS, event);
+                    }
+                }
+                if (requestType.equals("SetInputMute")) {
+                    return Reply.ok(null);
+                }
+                out.addProperty("inputMuted", input.muted);
+                return Reply.ok(out);
+            }
+            case "GetSceneItemList": {
+                Map<Integer, SceneItem> items = scenes.get(string(data, "sceneName"));
+                if (items == null) {
+                    return Reply.failure(STATUS_RESOURCE_NOT_FOUND, "No scene named " + string(data, "sceneName"));
+                }
+                JsonArray list = new JsonArray();
+                int index = 0;
+                for (Map.Entry<Integer, SceneItem> entry : items.entrySet()) {
+                    JsonObject item = new JsonObject();
+                    item.addProperty("sceneItemId", entry.getKey());
+                    item.addProperty("sceneItemIndex", index++);
+                    item.addProperty("sourceName", entry.getValue().sourceName);
+                    item.addProperty("sourceType", "OBS_SOURCE_TYPE_INPUT");
+                    item.addProperty("sceneItemEnabled", entry.getValue().enabled);
+                    list.add(item);
+                }
+                out.add("sceneItems", list);
+                return Reply.ok(out);
+            }
+            case "GetSceneItemId": {
+                Map<Integer, SceneItem> items = scenes.get(string(data, "sceneName"));
+                String sourceName = string(data, "sourceName");
+                if (items != null) {
+                    for (Map.Entry<Integer, SceneItem> entry : items.entrySet()) {
+                        if (entry.getValue().sourceName.equals(sourceName)) {
+                            out.addProperty("sceneItemId", entry.getKey());
+                            return Reply.ok(out);
+                        }
+                    }
+                }
+                return Reply.failure(STATUS_RESOURCE_NOT_FOUND, "No source " + sourceName + " in " + string(data, "sceneName"));
+            }
+            case "GetSceneItemEnabled":
+            case "SetSceneItemEnabled": {
+                String sceneName = string(data, "sceneName");
+                Map<Integer, SceneItem> items = scenes.get(sceneName);
+                int sceneItemId = (int) number(data, "sceneItemId");
+                SceneItem item = items == null ? null : items.get(sceneItemId);
+                if (item == null) {
+                    return Reply.failure(STATUS_RESOURCE_NOT_FOUND, "No scene item " + sceneItemId + " in " + sceneName);
+                }
+                if (requestType.equals("GetSceneItemEnabled")) {
+                    out.addProperty("sceneItemEnabled", item.enabled);
+                    return Reply.ok(out);
+                }
+                boolean enabled = bool(data, "sceneItemEnabled");
+                if (enabled != item.enabled) {
+                    item.enabled = enabled;
+                    JsonObject event = new JsonObject();
+                    event.addProperty("sceneName", sceneName);
+                    event.addProperty("sceneItemId", sceneItemId);
+                    event.addProperty("sceneItemEnabled", enabled);
+                    broadcast("SceneItemEnableStateChanged", INTENT_SCENE_ITEMS, event);
+                }
+                return Reply.ok(null);
+            }
+            case "TriggerStudioModeTransition": {
+                if (!studioMode) {
+                    return Reply.failure(STATUS_STUDIO_MODE_NOT_ACTIVE, "Studio mode is not active");
+                }
+                String previous = programScene;
+                programScene = previewScene;
+                previewScene = previous;
+                JsonObject transition = new JsonObject();
+                transition.addProperty("transitionName", "Fade");
+                broadcast("SceneTransitionStarted", INTENT_TRANSITIONS, transition);
+                JsonObject program = new JsonObject();
+                program.addProperty("sceneName", programScene);
+                broadcast("CurrentProgramSceneChanged", INTENT_SCENES, program);
+                JsonObject preview = new JsonObject();
+                preview.addProperty("sceneName", previewScene);
+                broadcast("CurrentPreviewSceneChanged", INTENT_UI, preview);
+                broadcast("SceneTransitionEnded", INTENT_TRANSITIONS, transition);
+                return Reply.ok(null);
+            }
+            default:
+                return Reply.failure(STATUS_UNKNOWN_REQUEST_TYPE, "Unknown request type " + requestType);
+        }
+    }
+
+    private void broadcast(String eventType, int intent, JsonObject eventData) {
+        JsonObject event = new JsonObject();
+        event.addProperty("eventType", eventType);
+        event.addProperty("eventIntent", intent);
+        event.add("eventData", eventData);
+        for (Session session : sessions) {
+            session.send(OP_EVENT, event);
+        }
+    }
+
+    private static String string(JsonObject data, String field) {
+        JsonElement value = data.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new MissingFieldException(field);
+        }
+        return value.getAsString();
+    }
+
+    private static boolean bool(JsonObject data, String field) {
+        JsonElement value = data.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new MissingFieldException(field);
+        }
+        return value.getAsBoolean();
+    }
+
+    private static double number(JsonObject data, String field) {
+        JsonElement value = data.get(field);
+        if (value == null || value.isJsonNull()) {
+            throw new MissingFieldException(field);
+        }
+        return value.getAsDouble();
+    }
+
+    private static String base64Sha256(String text) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha256.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed.
+        }
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicLong count = new AtomicLong();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Session {
+        private final WebSocketSession socket;
+        private final String challenge = randomToken();
+        private final String salt = randomToken();
+        private volatile boolean identified;
+
+        Session(WebSocketSession socket) {
+            this.socket = socket;
+        }
+
+        void send(int op, JsonObject data) {
+            JsonObject message = new JsonObject();
+            message.addProperty("op", op);
+            message.add("d", data);
+            try {
+                socket.sendText(gson.toJson(message));
+            } catch (IOException e) {
+                logger.debug("Mock OBS send to {} failed: {}", socket.getRemoteAddress(), e.getMessage());
+                sessions.remove(this);
+                socket.close();
+            }
+        }
+    }
+
+    private static String randomToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static class Reply {
+        private final int code;
+        private final String comment;
+        private final JsonObject data;
+
+        private Reply(int code, String comment, JsonObject data) {
+            this.code = code;
+            this.comment = comment;
+            this.data = data;
+        }
+
+        static Reply ok(JsonObject data) {
+            return new Reply(STATUS_SUCCESS, null, data);
+        }
+
+        static Reply failure(int code, String comment) {
+            return new Reply(code, comment, null);
+        }
+    }
+
+    private static class MissingFieldException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MissingFieldException(String field) {
+            super(field);
+        }
+    }
+
+    private static class Input {
+        private final String kind;
+        private Boolean muted;
+
+        Input(String kind, Boolean muted) {
+            this.kind = kind;
+            this.muted = muted;
+        }
+    }
+
+    private static class SceneItem {
+        private final String sourceName;
+        private boolean enabled;
+
+        SceneItem(String sourceName, boolean enabled) {
+            this.sourceName = sourceName;
+            this.enabled = enabled;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = LoadGenerator.parseOptions(args);
+        MockOBSServer server = new MockOBSServer(
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(Constants.OBS_PORT))),
+                options.get("password"));
+        server.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), Long.parseLong(options.getOrDefault("jitter", "0")));
+        server.setFailureRate(Double.parseDouble(options.getOrDefault("failure-rate", "0")));
+        server.setDropRate(Double.parseDouble(options.getOrDefault("drop-rate", "0")));
+        server.start();
+        new CountDownLatch(1).await();
+    }
+}
@@ -0,0 +1,245 @@
+package com.porfiriopartida.deck.loadtest;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Just enough of the server side of RFC 6455 for the mock OBS: the upgrade handshake, (fragmented) text frames,
+ * ping/pong and close. No extensions are negotiated, so frames are never compressed.
+ */
+class WebSocketSession implements Closeable {
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+    private static final int MAX_MESSAGE_LENGTH = 16 * 1024 * 1024;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private boolean closeSent;
+
+    private WebSocketSession(Socket socket, InputStream in, OutputStream out) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Reads the HTTP upgrade request and answers it. Echoes the {@code obswebsocket.json} subprotocol when offered.
+     */
+    static WebSocketSession accept(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        String requestLine = readLine(in);
+        if (requestLine == null || !requestLine.startsWith("GET ")) {
+            throw new IOException("Not a websocket upgrade: " + requestLine);
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        String key = headers.get("sec-websocket-key");
+        if (key == null) {
+            out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            throw new IOException("Missing Sec-WebSocket-Key");
+        }
+        StringBuilder response = new StringBuilder()
+                .append("HTTP/1.1 101 Switching Protocols\r\n")
+                .append("Upgrade: websocket\r\n")
+                .append("Connection: Upgrade\r\n")
+                .append("Sec-WebSocket-Accept: ").append(acceptKey(key)).append("\r\n");
+        String protocols = headers.get("sec-websocket-protocol");
+        if (protocols != null && protocols.contains("obswebsocket.json")) {
+            response.append("Sec-WebSocket-Protocol: obswebsocket.json\r\n");
+        }
+        response.append("\r\n");
+        out.write(response.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return new WebSocketSession(socket, in, out);
+    }
+
+    /**
+     * Returns the next text message, answering pings on the way, or null once the peer closed.
+     */
+    String readText() throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return null;
+            }
+            int second = readByte();
+            boolean fin = (first & 0x80) != 0;
+            int opcode = first & 0x0F;
+            boolean masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | readByte();
+                }
+            }
+            if (length > MAX_MESSAGE_LENGTH || message.size() + length > MAX_MESSAGE_LENGTH) {
+                throw new IOException("Message too large: " + length);
+            }
+            byte[] mask = new byte[4];
+            if (masked) {
+                readFully(mask);
+            }
+            byte[] payload = new byte[(int) length];
+            readFully(payload);
+            if (masked) {
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+            }
+
+            switch (opcode) {
+                case OP_PING:
+                    writeFrame(OP_PONG, payload);
+                    break;
+                case OP_PONG:
+                    break;
+                case OP_CLOSE:
+                    synchronized (this) {
+                        if (!closeSent) {
+                            writeFrame(OP_CLOSE, payload.length >= 2 ? new byte[]{payload[0], payload[1]} : new byte[0]);
+                        }
+                    }
+                    return null;
+                case OP_TEXT:
+                case OP_BINARY:
+                case OP_CONTINUATION:
+                    message.write(payload);
+                    if (fin) {
+                        return new String(message.toByteArray(), StandardCharsets.UTF_8);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown opcode " + opcode);
+            }
+        }
+    }
+
+    void sendText(String text) throws IOException {
+        writeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a close frame with an obs-websocket close code (e.g. 4009 authentication failed) and drops the socket.
+     */
+    void close(int code, String reason) {
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + text.length];
+        payload[0] = (byte) (code >> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(text, 0, payload, 2, text.length);
+        try {
+            writeFrame(OP_CLOSE, payload);
+        } catch (IOException ignored) {
+            // The peer is already gone.
+        }
+        close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing left to release.
+        }
+    }
+
+    String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+        if (closeSent) {
+            return;
+        }
+        if (opcode == OP_CLOSE) {
+            closeSent = true;
+        }
+        out.write(0x80 | opcode);
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            out.write(126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+        } else {
+            out.write(127);
+            long length = payload.length;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (length >>> shift));
+            }
+        }
+        out.write(payload);
+        out.flush();
+    }
+
+    private int readByte() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
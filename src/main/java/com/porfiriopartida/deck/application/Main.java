@@ -1,29 +1,75 @@
 package com.porfiriopartida.deck.application;
 
 import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.metrics.MetricsHttpServer;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
 import com.porfiriopartida.exception.ConfigurationValidationException;
 import com.porfiriopartida.deck.networking.ServerListener;
+import com.porfiriopartida.deck.util.FileManager;
 import com.porfiriopartida.ui.CommandManagerUI;
 import org.apache.logging.log4j.core.config.Configurator;
 
 import javax.swing.*;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class Main {
 
     public static void main(String[] args) throws IOException, ConfigurationValidationException {
         Configurator.initialize(null, "classpath:log4j2.xml");
         boolean headless = false;
+        int maxClients = Constants.MAX_CLIENT_CONNECTIONS;
+        int metricsPort = -1;
+        int webPort = Constants.WEB_PORT;
+        boolean webCompression = false;
+        List<String> webOrigins = new ArrayList<>();
         for (String arg : args) {
             if ("--headless".equals(arg)) {
                 headless = true;
-                break;
+            } else if (arg.startsWith("--max-clients=")) {
+                maxClients = Integer.parseInt(arg.substring("--max-clients=".length()));
+            } else if (arg.startsWith("--config-dir=")) {
+                FileManager.setConfigDirectoryPath(arg.substring("--config-dir=".length()));
+            } else if (arg.startsWith("--metrics-port=")) {
+                metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+            } else if (arg.startsWith("--web-port=")) {
+                webPort = Integer.parseInt(arg.substring("--web-port=".length()));
+            } else if ("--web-compression".equals(arg)) {
+                webCompression = true;
+            } else if (arg.startsWith("--web-origins=")) {
+                // Comma separated, e.g. http://192.168.1.20:8080,null (pages opened from disk) or *.
+                webOrigins.addAll(Arrays.asList(arg.substring("--web-origins=".length()).split(",")));
             }
         }
 
+        if (maxClients < 1) {
+            System.err.println("--max-clients must be at least 1.");
+            System.exit(2);
+        }
+
+        if (metricsPort > 0) {
+            // Prometheus text on http://127.0.0.1:<port>/metrics; the METRICS command works without it.
+            new MetricsHttpServer(metricsPort, MetricsRegistry.getDefault()).start();
+        }
+
+        int maxConnections = maxClients;
+        int port = webPort;
+        boolean compression = webCompression;
+        // Both modes start the same server, so the command line applies to the GUI's listener as well.
+        Consumer<ServerListener> serverSetup = serverListener -> {
+            serverListener.setMaxConnections(maxConnections);
+            serverListener.setWebPort(port);
+            serverListener.setWebCompression(compression);
+            serverListener.setWebAllowedOrigins(webOrigins);
+        };
+
         if (headless) {
             // Initialize in headless mode
             ServerListener serverListener = new ServerListener(true);
+            serverSetup.accept(serverListener);
             serverListener.startListening(Constants.SERVICE_PORT);
         } else {
             try {
@@ -32,7 +78,7 @@ public class Main {
                 e.printStackTrace();
             }
             // Initialize UI mode
-            CommandManagerUI ui = new CommandManagerUI();
+            CommandManagerUI ui = new CommandManagerUI(serverSetup);
             ui.showGUI();
         }
     }
@@ -0,0 +1,28 @@
+package com.porfiriopartida.deck.command;
+
+import com.porfiriopartida.deck.networking.DeckClient;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A handler whose effect maps to a single OBS request, so macros can send it as part of a request batch.
+ * {@link #toRequest(String)} returns null when the given parameters cannot be expressed as one request; building the
+ * request must not change any state, see {@link BatchedRequest}.
+ */
+public interface BatchableCommandHandler extends CommandHandler {
+    CompletableFuture<BatchedRequest> toRequest(String parameters);
+
+    static BatchableCommandHandler of(CommandHandler handler, Function<String, CompletableFuture<BatchedRequest>> requestFactory) {
+        return new BatchableCommandHandler() {
+            @Override
+            public CompletableFuture<?> handle(DeckClient client, String parameters) {
+                return handler.handle(client, parameters);
+            }
+
+            @Override
+            public CompletableFuture<BatchedRequest> toRequest(String parameters) {
+                return requestFactory.apply(parameters);
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.porfiriopartida.deck.command;
+
+import io.obswebsocket.community.client.message.request.Request;
+
+/**
+ * One step of a macro batch: the OBS request plus the local state it is expected to change.
+ * <p>
+ * Building one has no side effects, so a batch that is abandoned (a later step can't be batched, or compiling
+ * another step failed) leaves caches untouched. {@link #sent()} records the optimistic state once the batch is
+ * handed to OBS and {@link #failed()} undoes it if the batch never completes.
+ */
+public final class BatchedRequest {
+    private static final Runnable NOTHING = () -> { };
+
+    private final Request<?> request;
+    private final Runnable onSent;
+    private final Runnable onFailed;
+
+    private BatchedRequest(Request<?> request, Runnable onSent, Runnable onFailed) {
+        this.request = request;
+        this.onSent = onSent;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * A request that doesn't change any locally cached state.
+     */
+    public static BatchedRequest of(Request<?> request) {
+        return new BatchedRequest(request, NOTHING, NOTHING);
+    }
+
+    public static BatchedRequest of(Request<?> request, Runnable onSent, Runnable onFailed) {
+        return new BatchedRequest(request, onSent, onFailed);
+    }
+
+    public Request<?> getRequest() {
+        return request;
+    }
+
+    public void sent() {
+        onSent.run();
+    }
+
+    public void failed() {
+        onFailed.run();
+    }
+}
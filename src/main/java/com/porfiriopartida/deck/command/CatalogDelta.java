@@ -0,0 +1,52 @@
+package com.porfiriopartida.deck.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The difference between two versions of the {@link CommandCatalog}, keyed by command UUID.
+ */
+public class CatalogDelta {
+    private final long fromVersion;
+    private final long toVersion;
+    private final List<Command> added;
+    private final List<Command> changed;
+    private final List<UUID> removed;
+
+    public CatalogDelta(long fromVersion, long toVersion, List<Command> added, List<Command> changed, List<UUID> removed) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public static CatalogDelta empty(long version) {
+        return new CatalogDelta(version, version, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public List<Command> getAdded() {
+        return added;
+    }
+
+    public List<Command> getChanged() {
+        return changed;
+    }
+
+    public List<UUID> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,6 @@
+package com.porfiriopartida.deck.command;
+
+@FunctionalInterface
+public interface CatalogListener {
+    void onCatalogChanged(CatalogDelta delta);
+}
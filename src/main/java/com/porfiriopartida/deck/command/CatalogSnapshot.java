@@ -0,0 +1,94 @@
+package com.porfiriopartida.deck.command;
+
+import java.util.*;
+
+/**
+ * An immutable view of the {@link CommandCatalog} at one version. The command list, the UUID index and the recent
+ * delta history always belong together, so readers never see a list from one version and a version number from another.
+ */
+public final class CatalogSnapshot {
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, Collections.emptyList(), Collections.emptyList());
+
+    private final long version;
+    private final List<Command> commands;
+    private final Map<UUID, Command> byUuid;
+    private final List<CatalogDelta> history;
+
+    CatalogSnapshot(long version, List<Command> commands, List<CatalogDelta> history) {
+        this.version = version;
+        this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        Map<UUID, Command> index = new HashMap<>();
+        for (Command command : commands) {
+            index.put(command.getUuid(), command);
+        }
+        this.byUuid = Collections.unmodifiableMap(index);
+        this.history = Collections.unmodifiableList(new ArrayList<>(history));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    public Command find(UUID uuid) {
+        return uuid == null ? null : byUuid.get(uuid);
+    }
+
+    public boolean contains(UUID uuid) {
+        return find(uuid) != null;
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    List<CatalogDelta> getHistory() {
+        return history;
+    }
+
+    /**
+     * Folds every recorded change after {@code fromVersion} into one delta, or returns null when that version is
+     * unknown or too old and the caller needs the full list.
+     */
+    public CatalogDelta deltaSince(long fromVersion) {
+        if (fromVersion == version) {
+            return CatalogDelta.empty(version);
+        }
+        if (fromVersion > version || history.isEmpty() || history.get(0).getFromVersion() > fromVersion) {
+            return null;
+        }
+        Map<UUID, Command> added = new LinkedHashMap<>();
+        Map<UUID, Command> changed = new LinkedHashMap<>();
+        Set<UUID> removed = new LinkedHashSet<>();
+        for (CatalogDelta delta : history) {
+            if (delta.getFromVersion() < fromVersion) {
+                continue;
+            }
+            for (UUID uuid : delta.getRemoved()) {
+                if (added.remove(uuid) == null) {
+                    changed.remove(uuid);
+                    removed.add(uuid);
+                }
+            }
+            for (Command command : delta.getAdded()) {
+                if (removed.remove(command.getUuid())) {
+                    changed.put(command.getUuid(), command);
+                } else {
+                    added.put(command.getUuid(), command);
+                }
+            }
+            for (Command command : delta.getChanged()) {
+                if (added.containsKey(command.getUuid())) {
+                    added.put(command.getUuid(), command);
+                } else {
+                    changed.put(command.getUuid(), command);
+                }
+            }
+        }
+        return new CatalogDelta(fromVersion, version,
+                new ArrayList<>(added.values()), new ArrayList<>(changed.values()), new ArrayList<>(removed));
+    }
+}
@@ -2,6 +2,7 @@ package com.porfiriopartida.deck.command;
 
 import org.junit.platform.commons.util.StringUtils;
 
+import java.util.Objects;
 import java.util.UUID;
 
 public class Command {
@@ -39,6 +40,10 @@ public class Command {
         this.uuid = UUID.randomUUID();
     }
 
+    void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
     public String getLabel() {
         return label;
     }
@@ -47,6 +52,20 @@ public class Command {
         return parameters;
     }
 
+    public String getIcon() {
+        return icon;
+    }
+
+    /**
+     * Whether both commands would look and behave the same for a client, ignoring identity.
+     */
+    public boolean sameDefinition(Command other) {
+        return Objects.equals(label, other.label)
+                && Objects.equals(command, other.command)
+                && Objects.equals(icon, other.icon)
+                && Objects.equals(parameters, other.parameters);
+    }
+
     @Override
     public String toString() {
         return label + ( StringUtils.isBlank(parameters) ? "":" (" + parameters + ")");
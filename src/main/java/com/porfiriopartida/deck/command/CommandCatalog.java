@@ -0,0 +1,182 @@
+package com.porfiriopartida.deck.command;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * The versioned list of commands offered to deck clients. Every change bumps the version and records a
+ * {@link CatalogDelta}, so a client that remembers the version it last saw can catch up with just the difference.
+ * Only the most recent {@link #MAX_HISTORY} deltas are kept; older clients get a full snapshot instead.
+ * <p>
+ * Readers never lock: each change builds a new {@link CatalogSnapshot} and publishes it atomically. Writers are
+ * serialized so two concurrent edits can't both build on the same snapshot.
+ */
+public class CommandCatalog {
+    private static final Logger logger = LogManager.getLogger(CommandCatalog.class);
+    public static final int MAX_HISTORY = 256;
+
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>(CatalogSnapshot.EMPTY);
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+
+    public CatalogSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Returns the current commands as an unmodifiable list.
+     */
+    public List<Command> getCommands() {
+        return current.get().getCommands();
+    }
+
+    public long getVersion() {
+        return current.get().getVersion();
+    }
+
+    public boolean isEmpty() {
+        return current.get().isEmpty();
+    }
+
+    public Command find(UUID uuid) {
+        return current.get().find(uuid);
+    }
+
+    public CatalogDelta deltaSince(long fromVersion) {
+        return current.get().deltaSince(fromVersion);
+    }
+
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replaces the whole catalog (e.g. after reading it from disk), recording only what actually differs.
+     */
+    public void replaceAll(List<Command> replacement) {
+        CatalogDelta delta;
+        synchronized (writeLock) {
+            CatalogSnapshot snapshot = current.get();
+            keepUuids(snapshot, replacement);
+            Set<UUID> previous = new LinkedHashSet<>();
+            for (Command command : snapshot.getCommands()) {
+                previous.add(command.getUuid());
+            }
+            List<Command> added = new ArrayList<>();
+            List<Command> changed = new ArrayList<>();
+            List<Command> next = new ArrayList<>(replacement.size());
+            for (Command command : replacement) {
+                Command old = snapshot.find(command.getUuid());
+                if (!previous.remove(command.getUuid())) {
+                    added.add(command);
+                } else if (!old.sameDefinition(command)) {
+                    changed.add(command);
+                }
+                next.add(command);
+            }
+            delta = commit(snapshot, next, added, changed, new ArrayList<>(previous));
+        }
+        publish(delta);
+    }
+
+    /**
+     * Commands read from disk carry no uuid. Each takes the uuid of the previous command it most likely is (same
+     * definition, else same label, else same command and parameters) and only the rest get a new one, so a reload
+     * doesn't turn unchanged or edited commands into a remove plus an add and the window keeps their status.
+     */
+    private static void keepUuids(CatalogSnapshot snapshot, List<Command> replacement) {
+        Set<UUID> claimed = new HashSet<>();
+        for (Command command : replacement) {
+            if (command.getUuid() != null) {
+                claimed.add(command.getUuid());
+            }
+        }
+        List<Function<Command, String>> keys = Arrays.asList(
+                command -> command.getLabel() + '\0' + command.getCommand() + '\0' + command.getIcon() + '\0' + command.getParameters(),
+                command -> String.valueOf(command.getLabel()),
+                command -> command.getCommand() + '\0' + command.getParameters());
+        for (Function<Command, String> key : keys) {
+            Map<String, Deque<Command>> candidates = new HashMap<>();
+            for (Command command : snapshot.getCommands()) {
+                if (claimed.contains(command.getUuid())) {
+                    continue;
+                }
+                candidates.computeIfAbsent(key.apply(command), ignored -> new ArrayDeque<>()).add(command);
+            }
+            for (Command command : replacement) {
+                if (command.getUuid() != null) {
+                    continue;
+                }
+                Deque<Command> matches = candidates.get(key.apply(command));
+                Command match;
+                while (matches != null && (match = matches.poll()) != null) {
+                    if (claimed.add(match.getUuid())) {
+                        command.setUuid(match.getUuid());
+                        break;
+                    }
+                }
+            }
+        }
+        for (Command command : replacement) {
+            if (command.getUuid() == null) {
+                command.setUuid();
+            }
+        }
+    }
+
+    public boolean remove(UUID uuid) {
+        CatalogDelta delta;
+        synchronized (writeLock) {
+            CatalogSnapshot snapshot = current.get();
+            Command target = snapshot.find(uuid);
+            if (target == null) {
+                return false;
+            }
+            List<Command> next = new ArrayList<>(snapshot.getCommands());
+            next.remove(target);
+            delta = commit(snapshot, next, Collections.emptyList(), Collections.emptyList(), Collections.singletonList(uuid));
+        }
+        publish(delta);
+        return true;
+    }
+
+    private CatalogDelta commit(CatalogSnapshot snapshot, List<Command> next,
+                                List<Command> added, List<Command> changed, List<UUID> removed) {
+        if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+        long version = snapshot.getVersion();
+        CatalogDelta delta = new CatalogDelta(version, version + 1,
+                new ArrayList<>(added), new ArrayList<>(changed), new ArrayList<>(removed));
+        List<CatalogDelta> history = new ArrayList<>(snapshot.getHistory());
+        history.add(delta);
+        if (history.size() > MAX_HISTORY) {
+            history = history.subList(history.size() - MAX_HISTORY, history.size());
+        }
+        current.set(new CatalogSnapshot(version + 1, next, history));
+        logger.debug("Command catalog v{}: +{} ~{} -{}", version + 1, added.size(), changed.size(), removed.size());
+        return delta;
+    }
+
+    private void publish(CatalogDelta delta) {
+        if (delta == null) {
+            return;
+        }
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.onCatalogChanged(delta);
+            } catch (RuntimeException e) {
+                logger.error("Catalog listener failed.", e);
+            }
+        }
+    }
+}
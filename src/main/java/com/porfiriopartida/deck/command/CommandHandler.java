@@ -0,0 +1,14 @@
+package com.porfiriopartida.deck.command;
+
+import com.porfiriopartida.deck.networking.DeckClient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes one named deck command. The returned future completes once the command's effect (usually an OBS reply)
+ * is known; handlers report back to the client themselves.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+    CompletableFuture<?> handle(DeckClient client, String parameters);
+}
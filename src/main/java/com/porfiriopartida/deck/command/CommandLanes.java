@@ -0,0 +1,142 @@
+package com.porfiriopartida.deck.command;
+
+import com.porfiriopartida.deck.metrics.LatencyHistogram;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * One single-threaded executor per {@link CommandPriority}, so presses never wait behind background work and
+ * emergencies never wait behind presses. Handlers run their synchronous part here (usually handing a request to
+ * OBS); commands of the same priority keep their arrival order.
+ * <p>
+ * While at least one emergency command is running, the registered {@link EmergencyListener}s have been told so;
+ * the server uses this to hold running macros between steps.
+ */
+public class CommandLanes {
+    private static final Logger logger = LogManager.getLogger(CommandLanes.class);
+    public static final String METRIC_LANE_WAIT = "obsdeck_command_lane_wait_seconds";
+
+    /**
+     * Told when the first emergency starts and when the last one has completed.
+     */
+    public interface EmergencyListener {
+        void onEmergencyStarted();
+
+        void onEmergencyFinished();
+    }
+
+    private final Map<CommandPriority, ExecutorService> executors = new EnumMap<>(CommandPriority.class);
+    private final Map<CommandPriority, LatencyHistogram> waits = new EnumMap<>(CommandPriority.class);
+    private final List<EmergencyListener> emergencyListeners = new CopyOnWriteArrayList<>();
+    private int emergencies;
+
+    public CommandLanes() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public CommandLanes(MetricsRegistry metrics) {
+        for (CommandPriority priority : CommandPriority.values()) {
+            String lane = priority.name().toLowerCase(Locale.ROOT);
+            int threadPriority = priority == CommandPriority.EMERGENCY ? Thread.MAX_PRIORITY
+                    : priority == CommandPriority.BACKGROUND ? Thread.NORM_PRIORITY - 1 : Thread.NORM_PRIORITY;
+            executors.put(priority, Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "command-" + lane);
+                thread.setDaemon(true);
+                thread.setPriority(threadPriority);
+                return thread;
+            }));
+            waits.put(priority, metrics.histogram(METRIC_LANE_WAIT, "lane", lane));
+        }
+        metrics.describe(METRIC_LANE_WAIT, "Time a dispatched command waited for its priority lane's thread.");
+    }
+
+    public void addEmergencyListener(EmergencyListener listener) {
+        emergencyListeners.add(listener);
+    }
+
+    /**
+     * Runs the task on the lane for the given priority and completes with the task's own future.
+     */
+    public CompletableFuture<?> execute(CommandPriority priority, Supplier<CompletableFuture<?>> task) {
+        boolean emergency = priority == CommandPriority.EMERGENCY;
+        if (emergency) {
+            emergencyStarted();
+        }
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executors.get(priority).execute(() -> {
+                waits.get(priority).record(System.nanoTime() - queuedAt);
+                CompletableFuture<?> execution;
+                try {
+                    execution = task.get();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                execution.whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        if (emergency) {
+            result.whenComplete((value, error) -> emergencyFinished());
+        }
+        return result;
+    }
+
+    public synchronized boolean isEmergencyRunning() {
+        return emergencies > 0;
+    }
+
+    public void shutdown() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Transitions are notified under the lock so a quick end-then-start can't reach the listeners out of order.
+    private synchronized void emergencyStarted() {
+        if (emergencies++ == 0) {
+            notifyListeners(true);
+        }
+    }
+
+    private synchronized void emergencyFinished() {
+        if (--emergencies == 0) {
+            notifyListeners(false);
+        }
+    }
+
+    private void notifyListeners(boolean started) {
+        for (EmergencyListener listener : emergencyListeners) {
+            try {
+                if (started) {
+                    listener.onEmergencyStarted();
+                } else {
+                    listener.onEmergencyFinished();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Emergency listener failed.", e);
+            }
+        }
+    }
+}
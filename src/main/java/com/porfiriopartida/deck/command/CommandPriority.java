@@ -0,0 +1,21 @@
+package com.porfiriopartida.deck.command;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Which execution lane a command runs on; see {@link CommandLanes}.
+ */
+public enum CommandPriority {
+    /**
+     * Panic buttons (mute everything, stop a runaway macro). Has its own thread and pauses running macros.
+     */
+    @SerializedName("emergency") EMERGENCY,
+    /**
+     * Ordinary button presses; the default.
+     */
+    @SerializedName("interactive") INTERACTIVE,
+    /**
+     * Macros, status queries and anything else that can wait behind a press.
+     */
+    @SerializedName("background") BACKGROUND
+}
@@ -0,0 +1,214 @@
+package com.porfiriopartida.deck.command;
+
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.metrics.LatencyHistogram;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import com.porfiriopartida.deck.networking.DeckClient;
+import com.porfiriopartida.deck.policy.DispatchPolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Name to handler lookup used for every incoming line. Handlers can be registered at any time.
+ * <p>
+ * A line is {@code NAME}, {@code NAME parameters} or {@code NAME:parameters}; it is split by index, without
+ * intermediate arrays, and a line with no parameters is looked up as is.
+ * <p>
+ * Every dispatch is measured: the time to split and resolve the line, and per command the calls, failures and
+ * the time until the handler's future completes.
+ * <p>
+ * Each command has a {@link CommandPriority}, given at registration and overridable per command in policies.json;
+ * with {@link CommandLanes} set, handlers run on the lane for that priority instead of the reading thread.
+ */
+public class CommandRegistry {
+    private static final Logger logger = LogManager.getLogger(CommandRegistry.class);
+    public static final String METRIC_COMMANDS = "obsdeck_commands_total";
+    public static final String METRIC_COMMAND_FAILURES = "obsdeck_command_failures_total";
+    public static final String METRIC_COMMAND_LATENCY = "obsdeck_command_latency_seconds";
+    public static final String METRIC_PARSE_LATENCY = "obsdeck_command_parse_latency_seconds";
+    public static final String METRIC_UNKNOWN_COMMANDS = "obsdeck_unknown_commands_total";
+    public static final String METRIC_IN_FLIGHT = "obsdeck_commands_in_flight";
+
+    private final Map<String, CommandHandler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, CommandPriority> priorities = new ConcurrentHashMap<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> namesById = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram parseLatency;
+    private final LongAdder unknownCommands;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile DispatchPolicy dispatchPolicy;
+    private volatile CommandLanes lanes;
+
+    public CommandRegistry() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public CommandRegistry(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        parseLatency = metrics.histogram(METRIC_PARSE_LATENCY);
+        unknownCommands = metrics.counter(METRIC_UNKNOWN_COMMANDS);
+        metrics.gauge(METRIC_IN_FLIGHT, inFlight::get);
+        metrics.describe(METRIC_COMMAND_LATENCY, "Time from reading a command until its effect (usually the OBS reply) is known.");
+        metrics.describe(METRIC_PARSE_LATENCY, "Time spent splitting a line and resolving its handler.");
+        metrics.describe(METRIC_IN_FLIGHT, "Commands dispatched whose future has not completed yet.");
+    }
+
+    public void register(String name, CommandHandler handler) {
+        register(name, handler, CommandPriority.INTERACTIVE);
+    }
+
+    public synchronized void register(String name, CommandHandler handler, CommandPriority priority) {
+        stats.computeIfAbsent(name, CommandStats::new);
+        priorities.put(name, priority);
+        handlers.put(name, handler);
+        if (!ids.containsKey(name)) {
+            ids.put(name, namesById.size());
+            namesById.add(name);
+        }
+    }
+
+    /**
+     * Routes every dispatch through the given policy (debounce, coalescing, rate limits); null dispatches directly.
+     */
+    public void setDispatchPolicy(DispatchPolicy dispatchPolicy) {
+        this.dispatchPolicy = dispatchPolicy;
+    }
+
+    /**
+     * Runs handlers on per-priority lanes; null runs them on the dispatching thread.
+     */
+    public void setLanes(CommandLanes lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * The priority a command runs with: the policies.json override if there is one, else its registered priority.
+     */
+    public CommandPriority getPriority(String name) {
+        DispatchPolicy policy = dispatchPolicy;
+        CommandPriority configured = policy == null ? null : policy.getConfig().policyFor(name).getPriority();
+        if (configured != null) {
+            return configured;
+        }
+        CommandPriority registered = priorities.get(name);
+        return registered != null ? registered : CommandPriority.INTERACTIVE;
+    }
+
+    public CommandHandler unregister(String name) {
+        return handlers.remove(name);
+    }
+
+    public CommandHandler get(String name) {
+        return handlers.get(name);
+    }
+
+    /**
+     * Numeric ids are assigned in registration order and stay stable for the lifetime of the registry.
+     */
+    public String getName(int id) {
+        return id >= 0 && id < namesById.size() ? namesById.get(id) : null;
+    }
+
+    public List<String> getNamesById() {
+        return namesById;
+    }
+
+    public Set<String> getNames() {
+        return new TreeSet<>(handlers.keySet());
+    }
+
+    public CompletableFuture<?> dispatchLine(DeckClient client, String line) {
+        long start = System.nanoTime();
+        int end = nameEnd(line);
+        if (end < 0) {
+            return dispatch(client, line, "", start);
+        }
+        return dispatch(client, line.substring(0, end), line.substring(end + 1), start);
+    }
+
+    public CompletableFuture<?> dispatch(DeckClient client, String name, String parameters) {
+        return dispatch(client, name, parameters, System.nanoTime());
+    }
+
+    private CompletableFuture<?> dispatch(DeckClient client, String name, String parameters, long start) {
+        CommandHandler handler = handlers.get(name);
+        if (handler == null) {
+            int end = nameEnd(name);
+            if (end >= 0 && parameters.isEmpty()) {
+                // Catalog entries such as MACRO:MyMacro carry their argument in the command itself.
+                return dispatch(client, name.substring(0, end), name.substring(end + 1), start);
+            }
+            unknownCommands.increment();
+            client.send("Command not found (" + name + ")");
+            return CompletableFuture.completedFuture(null);
+        }
+        parseLatency.record(System.nanoTime() - start);
+        CommandStats commandStats = stats.get(name);
+        commandStats.calls.increment();
+        inFlight.incrementAndGet();
+        DispatchPolicy policy = dispatchPolicy;
+        CommandLanes commandLanes = lanes;
+        Supplier<CompletableFuture<?>> execute = commandLanes == null
+                ? () -> handler.handle(client, parameters)
+                : () -> commandLanes.execute(getPriority(name), () -> handler.handle(client, parameters));
+        CompletableFuture<?> result;
+        try {
+            result = policy == null ? execute.get() : policy.submit(client, name, parameters, getPriority(name), execute);
+        } catch (RuntimeException e) {
+            commandStats.complete(start, e);
+            throw e;
+        }
+        return result.whenComplete((ignored, error) -> commandStats.complete(start, error));
+    }
+
+    private static int nameEnd(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class CommandStats {
+        private final String name;
+        private final LongAdder calls;
+        private final LongAdder failures;
+        private final LatencyHistogram latency;
+
+        private CommandStats(String name) {
+            this.name = name;
+            calls = metrics.counter(METRIC_COMMANDS, "command", name);
+            failures = metrics.counter(METRIC_COMMAND_FAILURES, "command", name);
+            latency = metrics.histogram(METRIC_COMMAND_LATENCY, "command", name);
+        }
+
+        private void complete(long start, Throwable error) {
+            inFlight.decrementAndGet();
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            if (error != null) {
+                failures.increment();
+            }
+            if (elapsed >= TimeUnit.MILLISECONDS.toNanos(Constants.SLOW_COMMAND_THRESHOLD)) {
+                logger.warn("Slow command {}: {}ms{}", name, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        error == null ? "" : " (" + CommandReplies.describeFailure(error) + ")");
+            }
+        }
+    }
+}
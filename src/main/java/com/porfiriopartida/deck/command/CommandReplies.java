@@ -0,0 +1,93 @@
+package com.porfiriopartida.deck.command;
+
+import com.porfiriopartida.deck.networking.DeckClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+public class CommandReplies {
+
+    /**
+     * Reports the OBS outcome to the issuing client once the reply arrives, without holding the reading thread.
+     */
+    public static <T> CompletableFuture<T> reply(DeckClient client, String action, CompletableFuture<T> request, Function<T, String> describe) {
+        return markReported(request.whenComplete((response, error) -> {
+            if (error != null) {
+                client.send(action + " failed: " + describeFailure(error));
+                return;
+            }
+            String detail = describe.apply(response);
+            client.send(action + " executed." + (detail == null ? "" : " (" + detail + ")"));
+        }));
+    }
+
+    /**
+     * Tells the client about a failed command, unless the handler already did (see {@link #reported(Throwable)}).
+     */
+    public static void reportFailure(DeckClient client, Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ReportedFailure) {
+                return;
+            }
+        }
+        client.send("Command failed: " + describeFailure(error));
+    }
+
+    /**
+     * Wraps a failure the handler has already replied with, so the command's future can still fail (for metrics
+     * and binary RESULT status) without the caller replying a second time.
+     */
+    public static CompletionException reported(Throwable error) {
+        return error instanceof ReportedFailure ? (ReportedFailure) error : new ReportedFailure(causeOf(error));
+    }
+
+    /**
+     * Same future, with any failure marked as {@link #reported(Throwable) already reported}.
+     */
+    public static <T> CompletableFuture<T> markReported(CompletableFuture<T> request) {
+        return request.handle((response, error) -> {
+            if (error != null) {
+                throw reported(error);
+            }
+            return response;
+        });
+    }
+
+    public static String describeFailure(Throwable error) {
+        Throwable cause = causeOf(error);
+        return cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+    }
+
+    /**
+     * The exception a failed future actually failed with, without the {@link CompletionException} wrappers.
+     */
+    public static Throwable causeOf(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    public static CompletableFuture<Void> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Completes a command the handler has already replied to with a failure.
+     */
+    public static CompletableFuture<Void> failedAfterReply(Throwable error) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(reported(error));
+        return failed;
+    }
+
+    private static class ReportedFailure extends CompletionException {
+        private static final long serialVersionUID = 1L;
+
+        private ReportedFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -5,5 +5,33 @@ public class Constants {
     public static final String LOCALHOST = "localhost";
     public static final int OBS_PORT = 4444;
     public static final int SERVICE_PORT = 5445;
+    public static final int WEB_PORT = 5446;
     public static final long DEFAULT_TIMEOUT = 2000l;
+    public static final int MACRO_SCHEDULER_THREADS = 2;
+    public static final long SAVE_COALESCE_DELAY = 500l;
+    public static final int CONFIG_BACKUPS = 5;
+    public static final String CAMERA_SCENE = "_Generic_1_AudioAlertsCamera__";
+    public static final String CAMERA_SOURCE = "_CameraScene";
+    public static final long OBS_CONNECT_TIMEOUT = 3000l;
+    public static final long OBS_RECONNECT_BASE_DELAY = 500l;
+    public static final long OBS_RECONNECT_MAX_DELAY = 15000l;
+    public static final long OBS_HEARTBEAT_INTERVAL = 5000l;
+    public static final long OBS_HEARTBEAT_TIMEOUT = 3000l;
+    public static final int OBS_PENDING_QUEUE_SIZE = 64;
+    public static final long OBS_PENDING_EXPIRY = 10000l;
+    public static final int MAX_CLIENT_CONNECTIONS = 8;
+    public static final int CLIENT_OUTBOUND_CAPACITY = 256;
+    public static final long CLIENT_DRAIN_TIMEOUT = 3000l;
+    public static final long EVENT_FLUSH_INTERVAL = 50l;
+    public static final int EVENT_MAX_CLIENT_BACKLOG = CLIENT_OUTBOUND_CAPACITY / 2;
+    public static final long SLOW_COMMAND_THRESHOLD = 1000l;
+    public static final int POLICY_MAX_QUEUED = 32;
+    public static final int ICON_CACHE_SIZE = 256;
+    public static final int ICON_DEFAULT_SIZE = 64;
+    public static final int ICON_MAX_SIZE = 256;
+    public static final int ICON_MAX_REPLY_LENGTH = 60 * 1024;
+    public static final int ICON_REFRESH_INTERVAL = 2000;
+    public static final int WEB_MAX_HTTP_CONNECTIONS = 16;
+    public static final int WEB_HTTP_READ_TIMEOUT = 5000;
+    public static final long WEB_HTTP_REQUEST_TIMEOUT = 10000l;
 }
@@ -0,0 +1,227 @@
+package com.porfiriopartida.deck.icon;
+
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command icons from the icons directory, decoded and scaled once per size and kept in a bounded LRU.
+ * <p>
+ * Misses are loaded on a background thread and concurrent requests for the same variant share one load. Entries
+ * remember the source file's timestamp and length, so an edited icon is picked up on its next request.
+ */
+public class IconCache {
+    private static final Logger logger = LogManager.getLogger(IconCache.class);
+    public static final String METRIC_HITS = "obsdeck_icon_cache_hits_total";
+    public static final String METRIC_MISSES = "obsdeck_icon_cache_misses_total";
+
+    private final Path directory;
+    private final int maxSize;
+    private final Map<String, IconImage> variants;
+    private final ConcurrentMap<String, CompletableFuture<IconImage>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "icon-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public IconCache(Path directory, int capacity, int maxSize) {
+        this(directory, capacity, maxSize, MetricsRegistry.getDefault());
+    }
+
+    public IconCache(Path directory, int capacity, int maxSize, MetricsRegistry metrics) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.maxSize = maxSize;
+        this.variants = new LinkedHashMap<String, IconImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IconImage> eldest) {
+                return size() > capacity;
+            }
+        };
+        hits = metrics.counter(METRIC_HITS);
+        misses = metrics.counter(METRIC_MISSES);
+        metrics.gauge("obsdeck_icon_cache_entries", this::getEntryCount);
+        metrics.describe(METRIC_HITS, "Icon requests answered from the cache.");
+        metrics.describe(METRIC_MISSES, "Icon requests that had to read and scale the file.");
+    }
+
+    /**
+     * The icon scaled to fit a square of the given size (clamped to 1..max, never enlarged), completing on the
+     * loader thread on a miss. Fails with {@link FileNotFoundException} for unknown icons and
+     * {@link IllegalArgumentException} for names outside the icons directory.
+     */
+    public CompletableFuture<IconImage> load(String name, int size) {
+        int clamped = Math.max(1, Math.min(size, maxSize));
+        Path file;
+        try {
+            file = resolve(name);
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<IconImage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        String key = name + "@" + clamped;
+        IconImage cached;
+        synchronized (variants) {
+            cached = variants.get(key);
+        }
+        // Checking the timestamp is a stat call; cheap next to reading the file, and it keeps edits visible.
+        if (cached != null && isCurrent(cached, file)) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<IconImage> result = new CompletableFuture<>();
+        CompletableFuture<IconImage> pending = loading.putIfAbsent(key, result);
+        if (pending != null) {
+            return pending;
+        }
+        misses.increment();
+        try {
+            loader.execute(() -> {
+                try {
+                    IconImage image = read(name, clamped, file);
+                    synchronized (variants) {
+                        variants.put(key, image);
+                    }
+                    loading.remove(key);
+                    result.complete(image);
+                } catch (IOException | RuntimeException e) {
+                    loading.remove(key);
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #load(String, int)}, but the cache lookup and its timestamp check also run on the loader thread,
+     * for callers that must not touch the disk (the Swing thread).
+     */
+    public CompletableFuture<IconImage> loadInBackground(String name, int size) {
+        CompletableFuture<IconImage> result = new CompletableFuture<>();
+        try {
+            loader.execute(() -> load(name, size).whenComplete((image, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(image);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public int getEntryCount() {
+        synchronized (variants) {
+            return variants.size();
+        }
+    }
+
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private Path resolve(String name) {
+        Path file = directory.resolve(name).normalize();
+        if (name.isEmpty() || !file.startsWith(directory) || file.equals(directory)) {
+            throw new IllegalArgumentException("invalid icon name " + name);
+        }
+        return file;
+    }
+
+    private static boolean isCurrent(IconImage image, Path file) {
+        try {
+            return image.isFrom(Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static IconImage read(String name, int size, Path file) throws IOException {
+        long modified;
+        long length;
+        try {
+            modified = Files.getLastModifiedTime(file).toMillis();
+            length = Files.size(file);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("no icon " + name);
+        }
+        BufferedImage source = ImageIO.read(file.toFile());
+        if (source == null) {
+            throw new IOException("unsupported image format " + name);
+        }
+        BufferedImage scaled = scale(source, size);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "png", png);
+        byte[] bytes = png.toByteArray();
+        logger.debug("Loaded icon {} at {}px ({} bytes).", name, size, bytes.length);
+        return new IconImage(name, size, scaled, bytes, etag(bytes), modified, length);
+    }
+
+    /**
+     * Fits the image into a size x size square keeping its aspect ratio, halving first for large reductions so
+     * bilinear filtering doesn't skip pixels.
+     */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        double factor = Math.min(1.0, size / (double) Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * factor));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static String etag(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
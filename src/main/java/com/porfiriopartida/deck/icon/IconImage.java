@@ -0,0 +1,61 @@
+package com.porfiriopartida.deck.icon;
+
+import java.awt.image.BufferedImage;
+import java.util.Base64;
+
+/**
+ * One icon scaled to fit a square of {@link #getSize()} pixels, both decoded and as PNG. The ETag is derived from
+ * the PNG bytes, so it stays the same across restarts for as long as the source file doesn't change.
+ */
+public final class IconImage {
+    private final String name;
+    private final int size;
+    private final BufferedImage image;
+    private final byte[] png;
+    private final String etag;
+    private final long sourceModified;
+    private final long sourceLength;
+    private volatile String base64;
+
+    IconImage(String name, int size, BufferedImage image, byte[] png, String etag, long sourceModified, long sourceLength) {
+        this.name = name;
+        this.size = size;
+        this.image = image;
+        this.png = png;
+        this.etag = etag;
+        this.sourceModified = sourceModified;
+        this.sourceLength = sourceLength;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * The PNG bytes in Base64, encoded on first use and then kept.
+     */
+    public String getBase64() {
+        String encoded = base64;
+        if (encoded == null) {
+            encoded = Base64.getEncoder().encodeToString(png);
+            base64 = encoded;
+        }
+        return encoded;
+    }
+
+    boolean isFrom(long modified, long length) {
+        return sourceModified == modified && sourceLength == length;
+    }
+}
@@ -0,0 +1,60 @@
+package com.porfiriopartida.deck.macro;
+
+import com.porfiriopartida.deck.networking.DeckClient;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One running instance of a macro. All mutable state is guarded by the job's monitor and driven by
+ * {@link MacroScheduler}; delays are scheduled callbacks, never a sleeping thread.
+ */
+public class MacroJob {
+    public enum State { RUNNING, PAUSED, CANCELLED, COMPLETED }
+
+    private final int id;
+    private final MacroPlan plan;
+    private final DeckClient client;
+
+    State state = State.RUNNING;
+    int nextStep;
+    boolean segmentInFlight;
+    ScheduledFuture<?> pendingDelay;
+    long delayDeadline;
+    long remainingDelay;
+
+    MacroJob(int id, MacroPlan plan, DeckClient client) {
+        this.id = id;
+        this.plan = plan;
+        this.client = client;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getMacroName() {
+        return plan.getName();
+    }
+
+    public DeckClient getClient() {
+        return client;
+    }
+
+    List<MacroStep> getSteps() {
+        return plan.getSteps();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getNextStep() {
+        return nextStep;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return id + ":" + plan.getName() + ":" + state + ":" + nextStep + "/" + plan.getSteps().size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.porfiriopartida.deck.macro;
+
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The execution plan of a macro, compiled once when macros.json is loaded.
+ */
+public class MacroPlan {
+    private final String name;
+    private final List<MacroStep> steps;
+
+    private MacroPlan(String name, List<MacroStep> steps) {
+        this.name = name;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    public static MacroPlan compile(String name, List<Command> definition, CommandRegistry registry) {
+        List<MacroStep> steps = new ArrayList<>(definition.size());
+        for (Command command : definition) {
+            steps.add(MacroStep.compile(command, registry));
+        }
+        return new MacroPlan(name, steps);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<MacroStep> getSteps() {
+        return steps;
+    }
+}
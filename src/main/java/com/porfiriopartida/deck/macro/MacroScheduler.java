@@ -0,0 +1,237 @@
+package com.porfiriopartida.deck.macro;
+
+import com.porfiriopartida.deck.networking.DeckClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs macros as addressable jobs on a small scheduled pool. Consecutive steps are handed to the
+ * {@link MacroStepRunner} as one segment and DELAY steps become scheduled continuations, so any number of
+ * macros can be waiting without holding a thread and any of them can be paused or cancelled between steps.
+ * Starting a macro that is already running supersedes the older job.
+ * <p>
+ * {@link #preemptAll()} holds every running job (and any started meanwhile) between steps until
+ * {@link #releasePreempted()}, so an emergency command gets OBS to itself; a step already sent still completes.
+ */
+public class MacroScheduler {
+    private static final Logger logger = LogManager.getLogger(MacroScheduler.class);
+
+    private final MacroStepRunner runner;
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger idSequence = new AtomicInteger();
+    private final Map<Integer, MacroJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, MacroJob> jobsByMacro = new ConcurrentHashMap<>();
+    private final Set<MacroJob> preempted = new LinkedHashSet<>();
+    private boolean preempting;
+
+    public MacroScheduler(MacroStepRunner runner, int threads) {
+        this.runner = runner;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "macro-scheduler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public MacroJob start(MacroPlan plan, DeckClient client) {
+        String macroName = plan.getName();
+        MacroJob job = new MacroJob(idSequence.incrementAndGet(), plan, client);
+        MacroJob previous = jobsByMacro.put(macroName, job);
+        if (previous != null && cancel(previous)) {
+            previous.getClient().send("MACRO_SUPERSEDED:" + macroName + ":" + previous.getId());
+        }
+        jobs.put(job.getId(), job);
+        synchronized (preempted) {
+            if (preempting && pause(job)) {
+                preempted.add(job);
+                client.send("MACRO_PREEMPTED:" + macroName + ":" + job.getId());
+                return job;
+            }
+        }
+        executor.execute(() -> advance(job));
+        return job;
+    }
+
+    public boolean cancel(MacroJob job) {
+        synchronized (job) {
+            if (job.state == MacroJob.State.CANCELLED || job.state == MacroJob.State.COMPLETED) {
+                return false;
+            }
+            job.state = MacroJob.State.CANCELLED;
+            if (job.pendingDelay != null) {
+                job.pendingDelay.cancel(false);
+                job.pendingDelay = null;
+            }
+        }
+        finish(job);
+        logger.info("Macro job {} cancelled.", job);
+        return true;
+    }
+
+    public boolean pause(MacroJob job) {
+        synchronized (job) {
+            if (job.state != MacroJob.State.RUNNING) {
+                return false;
+            }
+            job.state = MacroJob.State.PAUSED;
+            if (job.pendingDelay != null) {
+                job.pendingDelay.cancel(false);
+                job.pendingDelay = null;
+                job.remainingDelay = Math.max(0, job.delayDeadline - System.currentTimeMillis());
+            }
+        }
+        return true;
+    }
+
+    public boolean resume(MacroJob job) {
+        synchronized (job) {
+            if (job.state != MacroJob.State.PAUSED) {
+                return false;
+            }
+            job.state = MacroJob.State.RUNNING;
+            if (job.remainingDelay > 0) {
+                scheduleDelay(job, job.remainingDelay);
+                job.remainingDelay = 0;
+                return true;
+            }
+            if (job.segmentInFlight) {
+                // The segment's completion picks the job back up.
+                return true;
+            }
+        }
+        executor.execute(() -> advance(job));
+        return true;
+    }
+
+    /**
+     * Resolves a job by numeric id, or the latest job for a macro name.
+     */
+    public MacroJob find(String idOrName) {
+        try {
+            return jobs.get(Integer.parseInt(idOrName));
+        } catch (NumberFormatException e) {
+            return jobsByMacro.get(idOrName);
+        }
+    }
+
+    public List<MacroJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Pauses every running job until {@link #releasePreempted()}. Jobs paused by a client are left alone and stay
+     * paused afterwards.
+     */
+    public void preemptAll() {
+        synchronized (preempted) {
+            preempting = true;
+            for (MacroJob job : getJobs()) {
+                if (pause(job)) {
+                    preempted.add(job);
+                    job.getClient().send("MACRO_PREEMPTED:" + job.getMacroName() + ":" + job.getId());
+                }
+            }
+            logger.info("Preempted {} macro job(s).", preempted.size());
+        }
+    }
+
+    public void releasePreempted() {
+        List<MacroJob> held;
+        synchronized (preempted) {
+            preempting = false;
+            held = new ArrayList<>(preempted);
+            preempted.clear();
+        }
+        for (MacroJob job : held) {
+            if (resume(job)) {
+                job.getClient().send("MACRO_RESUMED:" + job.getMacroName() + ":" + job.getId());
+            }
+        }
+    }
+
+    public void cancelAll() {
+        for (MacroJob job : getJobs()) {
+            cancel(job);
+        }
+    }
+
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private void advance(MacroJob job) {
+        List<MacroStep> steps = job.getSteps();
+        int first;
+        List<MacroStep> segment;
+        synchronized (job) {
+            if (job.state != MacroJob.State.RUNNING) {
+                return;
+            }
+            if (job.nextStep >= steps.size()) {
+                job.state = MacroJob.State.COMPLETED;
+                segment = null;
+                first = -1;
+            } else {
+                MacroStep step = steps.get(job.nextStep);
+                if (step.isDelay()) {
+                    job.nextStep++;
+                    scheduleDelay(job, step.getDelayMillis());
+                    return;
+                }
+                first = job.nextStep;
+                int end = first;
+                while (end < steps.size() && !steps.get(end).isDelay()) {
+                    end++;
+                }
+                segment = steps.subList(first, end);
+                job.nextStep = end;
+                job.segmentInFlight = true;
+            }
+        }
+
+        if (segment == null) {
+            finish(job);
+            job.getClient().send("Macro " + job.getMacroName() + " executed.");
+            return;
+        }
+
+        CompletableFuture<?> result;
+        try {
+            result = runner.run(job, first, segment);
+        } catch (RuntimeException e) {
+            logger.error("Macro job {} failed to run steps.", job, e);
+            result = CompletableFuture.completedFuture(null);
+        }
+        result.whenComplete((ignored, error) -> {
+            synchronized (job) {
+                job.segmentInFlight = false;
+            }
+            advance(job);
+        });
+    }
+
+    private void scheduleDelay(MacroJob job, long millis) {
+        job.delayDeadline = System.currentTimeMillis() + millis;
+        job.pendingDelay = executor.schedule(() -> {
+            synchronized (job) {
+                job.pendingDelay = null;
+            }
+            advance(job);
+        }, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(MacroJob job) {
+        jobs.remove(job.getId());
+        jobsByMacro.remove(job.getMacroName(), job);
+    }
+}
@@ -0,0 +1,73 @@
+package com.porfiriopartida.deck.macro;
+
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandHandler;
+import com.porfiriopartida.deck.command.CommandRegistry;
+
+/**
+ * A macro step parsed once at load time: either a delay with its duration already in millis, or a command
+ * with its handler resolved from the registry and its parameters normalized.
+ */
+public class MacroStep {
+    private final String command;
+    private final String parameters;
+    private final long delayMillis;
+    private final CommandHandler handler;
+
+    private MacroStep(String command, String parameters, long delayMillis, CommandHandler handler) {
+        this.command = command;
+        this.parameters = parameters;
+        this.delayMillis = delayMillis;
+        this.handler = handler;
+    }
+
+    public static MacroStep compile(Command definition, CommandRegistry registry) {
+        String command = definition.getCommand() == null ? "" : definition.getCommand().trim();
+        if (command.startsWith(Command.DELAY_COMMAND_TYPE)) {
+            String duration = command.substring(Command.DELAY_COMMAND_TYPE.length()).trim();
+            try {
+                long millis = Long.parseLong(duration);
+                if (millis < 0) {
+                    throw new IllegalArgumentException("Negative delay: " + command);
+                }
+                return new MacroStep(Command.DELAY_COMMAND_TYPE, "", millis, null);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid delay: " + command, e);
+            }
+        }
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("Macro step without a command");
+        }
+        CommandHandler handler = registry.get(command);
+        if (handler == null) {
+            throw new IllegalArgumentException("Unknown command: " + command);
+        }
+        String parameters = definition.getParameters() == null ? "" : definition.getParameters();
+        return new MacroStep(command, parameters, -1, handler);
+    }
+
+    public boolean isDelay() {
+        return delayMillis >= 0;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public CommandHandler getHandler() {
+        return handler;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return isDelay() ? Command.DELAY_COMMAND_TYPE + " " + delayMillis : command;
+    }
+}
@@ -0,0 +1,11 @@
+package com.porfiriopartida.deck.macro;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes a run of consecutive non-delay macro steps, completing once OBS has answered all of them.
+ */
+public interface MacroStepRunner {
+    CompletableFuture<?> run(MacroJob job, int firstStepIndex, List<MacroStep> steps);
+}
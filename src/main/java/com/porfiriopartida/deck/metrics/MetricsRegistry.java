@@ -0,0 +1,261 @@
+package com.porfiriopartida.deck.metrics;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms for the deck server, optionally with one label each (e.g. the command
+ * name). Instruments are created on first use and live for the lifetime of the process.
+ * <p>
+ * The same data is rendered as JSON for the {@code METRICS} command and as Prometheus text for the HTTP endpoint.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final ConcurrentMap<Series, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Series, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Series, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Series, LongSupplier> counterFunctions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> help = new ConcurrentHashMap<>();
+
+    /**
+     * The registry shared by the server, the OBS handler and the metrics endpoint.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public void describe(String name, String text) {
+        help.put(name, text);
+    }
+
+    public LongAdder counter(String name) {
+        return counter(name, null, null);
+    }
+
+    public LongAdder counter(String name, String label, String labelValue) {
+        return counters.computeIfAbsent(new Series(name, label, labelValue), series -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histogram(name, null, null);
+    }
+
+    public LatencyHistogram histogram(String name, String label, String labelValue) {
+        return histograms.computeIfAbsent(new Series(name, label, labelValue), series -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a value read on every scrape, replacing any earlier supplier with the same name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauge(name, null, null, value);
+    }
+
+    public void gauge(String name, String label, String labelValue, LongSupplier value) {
+        gauges.put(new Series(name, label, labelValue), value);
+    }
+
+    /**
+     * Like {@link #gauge(String, LongSupplier)} for a monotonic count kept elsewhere (e.g. reconnects).
+     */
+    public void counterFunction(String name, LongSupplier value) {
+        counterFunction(name, null, null, value);
+    }
+
+    public void counterFunction(String name, String label, String labelValue, LongSupplier value) {
+        counterFunctions.put(new Series(name, label, labelValue), value);
+    }
+
+    /**
+     * Values by metric name, or by name and label value for labelled metrics. Histograms are summarised in
+     * milliseconds and left out until they have recorded something.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> counterValues = new TreeMap<>();
+        for (Map.Entry<Series, LongAdder> entry : counters.entrySet()) {
+            put(counterValues, entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<Series, LongSupplier> entry : counterFunctions.entrySet()) {
+            put(counterValues, entry.getKey(), entry.getValue().getAsLong());
+        }
+        Map<String, Object> gaugeValues = new TreeMap<>();
+        for (Map.Entry<Series, LongSupplier> entry : gauges.entrySet()) {
+            put(gaugeValues, entry.getKey(), entry.getValue().getAsLong());
+        }
+        Map<String, Object> histogramValues = new TreeMap<>();
+        for (Map.Entry<Series, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("meanMs", round(histogram.getSumNanos() / (double) count / NANOS_PER_MILLI));
+            summary.put("p50Ms", round(histogram.percentileNanos(50) / NANOS_PER_MILLI));
+            summary.put("p99Ms", round(histogram.percentileNanos(99) / NANOS_PER_MILLI));
+            summary.put("maxMs", round(histogram.getMaxNanos() / NANOS_PER_MILLI));
+            put(histogramValues, entry.getKey(), summary);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        snapshot.put("histograms", histogramValues);
+        return snapshot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> values, Series series, Object value) {
+        if (series.label == null) {
+            values.put(series.name, value);
+        } else {
+            ((Map<String, Object>) values.computeIfAbsent(series.name, name -> new TreeMap<String, Object>()))
+                    .put(series.labelValue, value);
+        }
+    }
+
+    /**
+     * Renders everything in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        Map<String, Map<Series, LongAdder>> counterFamilies = new TreeMap<>();
+        for (Map.Entry<Series, LongAdder> entry : counters.entrySet()) {
+            counterFamilies.computeIfAbsent(entry.getKey().name, name -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<Series, LongAdder>> family : counterFamilies.entrySet()) {
+            header(out, family.getKey(), "counter");
+            for (Map.Entry<Series, LongAdder> entry : family.getValue().entrySet()) {
+                out.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+            }
+        }
+        appendSuppliers(out, counterFunctions, "counter");
+        appendSuppliers(out, gauges, "gauge");
+
+        Map<String, Map<Series, LatencyHistogram>> histogramFamilies = new TreeMap<>();
+        for (Map.Entry<Series, LatencyHistogram> entry : histograms.entrySet()) {
+            histogramFamilies.computeIfAbsent(entry.getKey().name, name -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<Series, LatencyHistogram>> family : histogramFamilies.entrySet()) {
+            header(out, family.getKey(), "histogram");
+            for (Map.Entry<Series, LatencyHistogram> entry : family.getValue().entrySet()) {
+                appendHistogram(out, entry.getKey(), entry.getValue());
+            }
+        }
+        return out.toString();
+    }
+
+    private void appendSuppliers(StringBuilder out, Map<Series, LongSupplier> suppliers, String type) {
+        Map<String, Map<Series, LongSupplier>> families = new TreeMap<>();
+        for (Map.Entry<Series, LongSupplier> entry : suppliers.entrySet()) {
+            families.computeIfAbsent(entry.getKey().name, name -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<Series, LongSupplier>> family : families.entrySet()) {
+            header(out, family.getKey(), type);
+            for (Map.Entry<Series, LongSupplier> entry : family.getValue().entrySet()) {
+                out.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+            }
+        }
+    }
+
+    private void header(StringBuilder out, String name, String type) {
+        String text = help.get(name);
+        if (text != null) {
+            out.append("# HELP ").append(name).append(' ').append(text).append('\n');
+        }
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendHistogram(StringBuilder out, Series series, LatencyHistogram histogram) {
+        long[] cumulative = histogram.getCumulativeCounts();
+        for (int i = 0; i < cumulative.length; i++) {
+            String bound = i < LatencyHistogram.BUCKET_BOUNDS_NANOS.length
+                    ? BigDecimal.valueOf(LatencyHistogram.BUCKET_BOUNDS_NANOS[i] / NANOS_PER_SECOND).toPlainString()
+                    : "+Inf";
+            out.append(series.name).append("_bucket{");
+            if (series.label != null) {
+                series.appendLabel(out).append(',');
+            }
+            out.append("le=\"").append(bound).append("\"} ").append(cumulative[i]).append('\n');
+        }
+        out.append(series.withSuffix("_sum")).append(' ').append(histogram.getSumNanos() / NANOS_PER_SECOND).append('\n');
+        out.append(series.withSuffix("_count")).append(' ').append(cumulative[cumulative.length - 1]).append('\n');
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static final class Series implements Comparable<Series> {
+        private final String name;
+        private final String label;
+        private final String labelValue;
+
+        private Series(String name, String label, String labelValue) {
+            this.name = name;
+            this.label = label;
+            this.labelValue = label == null ? null : String.valueOf(labelValue);
+        }
+
+        private StringBuilder appendLabel(StringBuilder out) {
+            out.append(label).append("=\"");
+            for (int i = 0; i < labelValue.length(); i++) {
+                char c = labelValue.charAt(i);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+            return out.append('"');
+        }
+
+        private String withSuffix(String suffix) {
+            StringBuilder out = new StringBuilder(name).append(suffix);
+            if (label != null) {
+                appendLabel(out.append('{')).append('}');
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return withSuffix("");
+        }
+
+        @Override
+        public int compareTo(Series other) {
+            return toString().compareTo(other.toString());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Series)) {
+                return false;
+            }
+            Series other = (Series) o;
+            return name.equals(other.name) && Objects.equals(label, other.label) && Objects.equals(labelValue, other.labelValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, label, labelValue);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.porfiriopartida.deck.networking;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact framing for constrained deck clients, chosen per connection: a client that opens with {@link #MAGIC}
+ * followed by a version byte speaks this protocol, anything else is treated as the newline text protocol.
+ * <p>
+ * Every frame is {@code u16 length | u8 type | u16 correlationId | payload}, big-endian, where length counts
+ * the bytes after itself. Requests carry a client chosen correlation id that is echoed on the matching result.
+ * <ul>
+ * <li>{@link #EXECUTE}: {@code u16 commandId | UTF-8 parameters}, ids come from {@link #LIST_COMMAND_IDS}</li>
+ * <li>{@link #EXECUTE_LINE}: a text protocol line in UTF-8</li>
+ * <li>{@link #LIST_COMMAND_IDS}: answered by {@link #COMMAND_IDS}, repeated {@code u16 id | u8 length | name}</li>
+ * <li>{@link #PING}: answered by {@link #PONG}</li>
+ * <li>{@link #RESULT}: {@code u8 status | UTF-8 message}, once per request</li>
+ * <li>{@link #MESSAGE}: UTF-8 text: output of a request other than its RESULT, sent before or after it with the same
+ * correlation id, or an unsolicited message (correlation 0)</li>
+ * <li>{@link #CONTINUED} (version 2): leading bytes of a RESULT or MESSAGE text too long for one frame. The split
+ * may fall inside a character; receivers append the payloads of consecutive CONTINUED frames for a correlation id
+ * and decode them together with the text of the RESULT or MESSAGE frame that completes it.</li>
+ * </ul>
+ * Version 1 clients can't reassemble, so a text that doesn't fit a frame is replaced: a RESULT by
+ * {@link #STATUS_TOO_LARGE}, a MESSAGE by a short notice. Nothing is ever cut off silently.
+ */
+public class BinaryProtocol {
+    public static final int MAGIC = 0xDB;
+    public static final int VERSION = 2;
+    public static final int MIN_VERSION = 1;
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+    private static final int HEADER_LENGTH = 3;
+
+    public static final byte EXECUTE = 0x01;
+    public static final byte EXECUTE_LINE = 0x02;
+    public static final byte LIST_COMMAND_IDS = 0x03;
+    public static final byte PING = 0x04;
+
+    public static final byte RESULT = (byte) 0x81;
+    public static final byte COMMAND_IDS = (byte) 0x82;
+    public static final byte PONG = (byte) 0x83;
+    public static final byte MESSAGE = (byte) 0x84;
+    public static final byte CONTINUED = (byte) 0x85;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_FAILED = 1;
+    public static final byte STATUS_UNKNOWN_COMMAND = 2;
+    public static final byte STATUS_BAD_REQUEST = 3;
+    public static final byte STATUS_BUSY = 4;
+    public static final byte STATUS_TOO_LARGE = 5;
+
+    public static class Frame {
+        private final byte type;
+        private final int correlationId;
+        private final ByteBuffer payload;
+
+        Frame(byte type, int correlationId, ByteBuffer payload) {
+            this.type = type;
+            this.correlationId = correlationId;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public int getCorrelationId() {
+            return correlationId;
+        }
+
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+
+    public static byte[] hello() {
+        return hello(VERSION);
+    }
+
+    public static byte[] hello(int version) {
+        return new byte[]{(byte) MAGIC, (byte) version};
+    }
+
+    /**
+     * Reads one frame, or returns null at end of stream.
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < HEADER_LENGTH) {
+            throw new IOException("Frame too short: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        int correlationId = buffer.getShort() & 0xFFFF;
+        return new Frame(type, correlationId, buffer.slice());
+    }
+
+    public static byte[] result(int correlationId, byte status, String message) {
+        return result(VERSION, correlationId, status, message);
+    }
+
+    /**
+     * The RESULT frame, preceded by CONTINUED frames when the text is too long for one; the frames are returned
+     * back to back in a single array.
+     */
+    public static byte[] result(int version, int correlationId, byte status, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int room = MAX_FRAME_LENGTH - HEADER_LENGTH - 1;
+        if (text.length > room && version < 2) {
+            return result(version, correlationId, STATUS_TOO_LARGE, "Reply too large for protocol v" + version
+                    + " (" + text.length + " bytes)");
+        }
+        return withText(RESULT, correlationId, status, text, room);
+    }
+
+    public static byte[] message(int correlationId, String message) {
+        return message(VERSION, correlationId, message);
+    }
+
+    /**
+     * The MESSAGE frame, preceded by CONTINUED frames when the text is too long for one.
+     */
+    public static byte[] message(int version, int correlationId, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int room = MAX_FRAME_LENGTH - HEADER_LENGTH;
+        if (text.length > room && version < 2) {
+            return message(version, correlationId, "Message too large for protocol v" + version
+                    + " (" + text.length + " bytes)");
+        }
+        return withText(MESSAGE, correlationId, null, text, room);
+    }
+
+    private static byte[] withText(byte type, int correlationId, Byte status, byte[] text, int room) {
+        // The final frame carries as much as fits; everything before it goes into full CONTINUED frames.
+        int prefix = Math.max(0, text.length - room);
+        int chunk = MAX_FRAME_LENGTH - HEADER_LENGTH;
+        int continuations = (prefix + chunk - 1) / chunk;
+        int statusLength = status == null ? 0 : 1;
+        ByteBuffer buffer = ByteBuffer.allocate(continuations * (2 + HEADER_LENGTH) + prefix
+                + 2 + HEADER_LENGTH + statusLength + text.length - prefix);
+        int offset = 0;
+        while (offset < prefix) {
+            int length = Math.min(chunk, prefix - offset);
+            header(buffer, CONTINUED, correlationId, length).put(text, offset, length);
+            offset += length;
+        }
+        header(buffer, type, correlationId, statusLength + text.length - prefix);
+        if (status != null) {
+            buffer.put(status);
+        }
+        buffer.put(text, prefix, text.length - prefix);
+        return buffer.array();
+    }
+
+    public static byte[] pong(int correlationId) {
+        return frame(PONG, correlationId, 0).array();
+    }
+
+    public static byte[] commandIds(int correlationId, List<String> names) {
+        int size = 0;
+        int count = 0;
+        for (String name : names) {
+            int entry = 3 + Math.min(name.getBytes(StandardCharsets.UTF_8).length, 0xFF);
+            if (size + entry > MAX_FRAME_LENGTH - HEADER_LENGTH) {
+                break;
+            }
+            size += entry;
+            count++;
+        }
+        ByteBuffer buffer = frame(COMMAND_IDS, correlationId, size);
+        for (int id = 0; id < count; id++) {
+            byte[] name = truncate(names.get(id), 0xFF);
+            buffer.putShort((short) id).put((byte) name.length).put(name);
+        }
+        return buffer.array();
+    }
+
+    public static String text(ByteBuffer payload) {
+        return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer frame(byte type, int correlationId, int payloadLength) {
+        return header(ByteBuffer.allocate(2 + HEADER_LENGTH + payloadLength), type, correlationId, payloadLength);
+    }
+
+    private static ByteBuffer header(ByteBuffer buffer, byte type, int correlationId, int payloadLength) {
+        return buffer.putShort((short) (HEADER_LENGTH + payloadLength)).put(type).putShort((short) correlationId);
+    }
+
+    private static byte[] truncate(String text, int maxBytes) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return bytes;
+        }
+        // Back off to the start of a character so the result is still valid UTF-8.
+        int length = maxBytes;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+}
@@ -0,0 +1,277 @@
+package com.porfiriopartida.deck.networking;
+
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.policy.CommandRejectedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One connected deck client. Lines are read on the connection thread and dispatched to the
+ * {@link ServerListener}; replies go through a bounded outbound queue drained by a dedicated
+ * writer thread, so a slow client only ever fills its own queue.
+ * <p>
+ * The first byte picks the protocol: {@link BinaryProtocol#MAGIC} switches the connection to binary frames,
+ * anything else is the newline delimited text protocol.
+ */
+public class ClientConnection implements DeckClient, Runnable {
+    private static final Logger logger = LogManager.getLogger(ClientConnection.class);
+    private static final AtomicInteger idSequence = new AtomicInteger();
+    private static final long WRITER_POLL_MILLIS = 250L;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final ServerListener server;
+    private final Socket socket;
+    private final String id;
+    private final BlockingQueue<byte[]> outbound;
+    private volatile boolean closing;
+    private volatile boolean binary;
+    private volatile int version;
+    private volatile Thread writerThread;
+
+    public ClientConnection(ServerListener server, Socket socket, int outboundCapacity) {
+        this.server = server;
+        this.socket = socket;
+        this.id = "client-" + idSequence.incrementAndGet();
+        this.outbound = new ArrayBlockingQueue<>(outboundCapacity);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public void run() {
+        Thread writer = new Thread(this::writeLoop, id + "-writer");
+        writer.setDaemon(true);
+        writerThread = writer;
+        writer.start();
+
+        logger.info("Client connected: {} ({})", id, socket.getRemoteSocketAddress());
+        try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            in.mark(1);
+            int first = in.read();
+            if (first == BinaryProtocol.MAGIC) {
+                readBinary(new DataInputStream(in));
+            } else if (first >= 0) {
+                in.reset();
+                readText(in);
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                logger.warn("Client {} read failed: {}", id, e.getMessage());
+            }
+        } finally {
+            closing = true;
+            server.onClientDisconnected(this);
+            logger.info("Client disconnected: {}", id);
+        }
+    }
+
+    private void readText(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            server.processLine(this, line)
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            CommandReplies.reportFailure(this, error);
+                        }
+                    });
+        }
+    }
+
+    private void readBinary(DataInputStream in) throws IOException {
+        int requested = in.readUnsignedByte();
+        if (requested < BinaryProtocol.MIN_VERSION || requested > BinaryProtocol.VERSION) {
+            logger.warn("Client {} asked for unsupported binary protocol version {}.", id, requested);
+            return;
+        }
+        version = requested;
+        binary = true;
+        enqueue(BinaryProtocol.hello(version));
+        logger.info("Client {} negotiated binary protocol v{}.", id, version);
+
+        CommandRegistry registry = server.getCommandRegistry();
+        BinaryProtocol.Frame frame;
+        while ((frame = BinaryProtocol.read(in)) != null) {
+            int correlationId = frame.getCorrelationId();
+            switch (frame.getType()) {
+                case BinaryProtocol.EXECUTE:
+                    if (frame.getPayload().remaining() < 2) {
+                        enqueue(BinaryProtocol.result(correlationId, BinaryProtocol.STATUS_BAD_REQUEST, "Missing command id"));
+                        break;
+                    }
+                    int commandId = frame.getPayload().getShort() & 0xFFFF;
+                    String name = registry.getName(commandId);
+                    if (name == null || registry.get(name) == null) {
+                        enqueue(BinaryProtocol.result(correlationId, BinaryProtocol.STATUS_UNKNOWN_COMMAND, "Unknown command id " + commandId));
+                        break;
+                    }
+                    RequestScope scope = new RequestScope(correlationId);
+                    server.processCommand(scope, name, BinaryProtocol.text(frame.getPayload()))
+                            .whenComplete((result, error) -> scope.complete(error));
+                    break;
+                case BinaryProtocol.EXECUTE_LINE:
+                    RequestScope lineScope = new RequestScope(correlationId);
+                    server.processLine(lineScope, BinaryProtocol.text(frame.getPayload()))
+                            .whenComplete((result, error) -> lineScope.complete(error));
+                    break;
+                case BinaryProtocol.LIST_COMMAND_IDS:
+                    enqueue(BinaryProtocol.commandIds(correlationId, registry.getNamesById()));
+                    break;
+                case BinaryProtocol.PING:
+                    enqueue(BinaryProtocol.pong(correlationId));
+                    break;
+                default:
+                    enqueue(BinaryProtocol.result(correlationId, BinaryProtocol.STATUS_BAD_REQUEST, "Unknown frame type " + frame.getType()));
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public int getPendingOutbound() {
+        return outbound.size();
+    }
+
+    @Override
+    public void send(String message) {
+        if (binary) {
+            enqueue(BinaryProtocol.message(version, 0, message));
+        } else {
+            enqueue((message + LINE_SEPARATOR).getBytes());
+        }
+    }
+
+    private void enqueue(byte[] data) {
+        if (!outbound.offer(data)) {
+            logger.warn("Outbound queue full for {}, dropping message.", id);
+        }
+    }
+
+    /**
+     * Stops reading new commands; whatever is already queued is still flushed by the writer.
+     */
+    public void drain() {
+        closing = true;
+        try {
+            socket.shutdownInput();
+        } catch (IOException e) {
+            logger.debug("Client {} input already closed.", id);
+        }
+    }
+
+    /**
+     * Waits for the writer to flush what is queued and stop; true once it has (or never started).
+     */
+    public boolean awaitWriter(long timeoutMillis) throws InterruptedException {
+        Thread writer = writerThread;
+        if (writer == null) {
+            return true;
+        }
+        writer.join(timeoutMillis);
+        return !writer.isAlive();
+    }
+
+    public void forceClose() {
+        closing = true;
+        closeSocket();
+    }
+
+    private void writeLoop() {
+        try {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                byte[] data = outbound.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (data == null) {
+                    if (closing) {
+                        break;
+                    }
+                    continue;
+                }
+                out.write(data);
+                if (outbound.isEmpty()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            logger.warn("Client {} write failed: {}", id, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closing = true;
+            closeSocket();
+        }
+    }
+
+    /**
+     * The client as seen by a single binary request: the handler's last reply becomes the RESULT frame for the
+     * request's correlation id; anything else it sends, before (e.g. per-target status lines) or afterwards (e.g.
+     * macro steps), goes out in order as MESSAGE frames with the same correlation id.
+     */
+    private class RequestScope implements DeckClient {
+        private final int correlationId;
+        private String lastMessage;
+        private boolean answered;
+
+        private RequestScope(int correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int getPendingOutbound() {
+            return outbound.size();
+        }
+
+        @Override
+        public synchronized void send(String message) {
+            if (answered) {
+                enqueue(BinaryProtocol.message(version, correlationId, message));
+                return;
+            }
+            if (lastMessage != null) {
+                enqueue(BinaryProtocol.message(version, correlationId, lastMessage));
+            }
+            lastMessage = message;
+        }
+
+        private synchronized void complete(Throwable error) {
+            answered = true;
+            if (error == null) {
+                enqueue(BinaryProtocol.result(version, correlationId, BinaryProtocol.STATUS_OK,
+                        lastMessage == null ? "" : lastMessage));
+            } else {
+                String message = lastMessage == null || lastMessage.isEmpty() ? CommandReplies.describeFailure(error) : lastMessage;
+                byte status = CommandReplies.causeOf(error) instanceof CommandRejectedException ? BinaryProtocol.STATUS_BUSY : BinaryProtocol.STATUS_FAILED;
+                enqueue(BinaryProtocol.result(version, correlationId, status, message));
+            }
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
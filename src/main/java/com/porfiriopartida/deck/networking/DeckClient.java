@@ -0,0 +1,17 @@
+package com.porfiriopartida.deck.networking;
+
+/**
+ * Anything the server can answer to: a socket client or the local console/UI.
+ */
+public interface DeckClient {
+    String getId();
+
+    void send(String message);
+
+    /**
+     * Messages accepted by {@link #send(String)} but not yet written out; lets broadcasters back off slow clients.
+     */
+    default int getPendingOutbound() {
+        return 0;
+    }
+}
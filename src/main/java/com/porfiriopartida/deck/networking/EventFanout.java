@@ -0,0 +1,167 @@
+package com.porfiriopartida.deck.networking;
+
+import com.google.gson.Gson;
+import com.porfiriopartida.deck.obs.OBSEvent;
+import com.porfiriopartida.deck.obs.OBSEventListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Forwards OBS events to subscribed clients as {@code EVENT:{json}} lines.
+ * <p>
+ * Events are not written as they arrive: each subscriber keeps only the newest pending event per
+ * {@link OBSEvent#getKey() key} and {@link OBSEvent#getTarget() target}, and pending events are flushed every {@code flushInterval} ms. A burst of changes
+ * to the same input therefore costs one line, and a client whose outbound queue is backed up simply skips flushes
+ * until it catches up, receiving the latest state instead of every stale step in between.
+ */
+public class EventFanout implements OBSEventListener {
+    private static final Logger logger = LogManager.getLogger(EventFanout.class);
+
+    private final Gson gson;
+    private final long flushInterval;
+    private final int maxBacklog;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "event-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EventFanout(Gson gson, long flushInterval, int maxBacklog) {
+        this.gson = gson;
+        this.flushInterval = flushInterval;
+        this.maxBacklog = maxBacklog;
+    }
+
+    /**
+     * Subscribes (or re-subscribes) a client. Each filter is an event type, e.g. {@code InputMuteStateChanged},
+     * or a type plus subject, e.g. {@code InputMuteStateChanged:Mic}, and matches on every OBS target; prefixing it
+     * with a target name, e.g. {@code studio@InputMuteStateChanged}, limits it to that target. No filters means
+     * every event.
+     */
+    public void subscribe(DeckClient client, Collection<String> filters) {
+        subscriptions.put(client.getId(), new Subscription(client, filters));
+    }
+
+    public boolean unsubscribe(String clientId) {
+        return subscriptions.remove(clientId) != null;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void onEvent(OBSEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        boolean queued = false;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.accepts(event)) {
+                subscription.offer(event);
+                queued = true;
+            }
+        }
+        if (queued) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.schedule(this::flush, flushInterval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        boolean deferred = false;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.client.getPendingOutbound() > maxBacklog) {
+                // Slow consumer: keep coalescing and try again next tick.
+                deferred |= subscription.hasPending();
+                continue;
+            }
+            for (OBSEvent event : subscription.takePending()) {
+                subscription.client.send("EVENT:" + gson.toJson(event));
+            }
+        }
+        if (deferred) {
+            scheduleFlush();
+        }
+    }
+
+    public void shutdown() {
+        flusher.shutdownNow();
+        subscriptions.clear();
+    }
+
+    private static class Subscription {
+        private final DeckClient client;
+        private final Set<String> filters;
+        private Map<String, OBSEvent> pending = new LinkedHashMap<>();
+
+        Subscription(DeckClient client, Collection<String> filters) {
+            this.client = client;
+            this.filters = new HashSet<>(filters);
+        }
+
+        boolean accepts(OBSEvent event) {
+            if (filters.isEmpty() || filters.contains(event.getType())) {
+                return true;
+            }
+            String key = event.getKey();
+            for (String filter : filters) {
+                int at = filter.indexOf('@');
+                if (at >= 0) {
+                    if (!filter.substring(0, at).equals(event.getTarget())) {
+                        continue;
+                    }
+                    filter = filter.substring(at + 1);
+                }
+                if (key.equals(filter) || key.startsWith(filter + ":") || filter.equals(event.getType())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void offer(OBSEvent event) {
+            String key = coalescingKey(event);
+            OBSEvent previous = pending.remove(key);
+            if (previous != null && previous.getSeq() > event.getSeq()) {
+                event = previous;
+            } else if (previous != null) {
+                logger.trace("Coalesced {} for {}", previous, client.getId());
+            }
+            pending.put(key, event);
+        }
+
+        private static String coalescingKey(OBSEvent event) {
+            return event.getTarget() == null ? event.getKey() : event.getTarget() + "@" + event.getKey();
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        synchronized Collection<OBSEvent> takePending() {
+            if (pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Collection<OBSEvent> events = pending.values();
+            pending = new LinkedHashMap<>();
+            return events;
+        }
+    }
+}
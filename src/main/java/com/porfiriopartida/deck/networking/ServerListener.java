@@ -1,10 +1,35 @@
 package com.porfiriopartida.deck.networking;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.porfiriopartida.deck.command.BatchableCommandHandler;
+import com.porfiriopartida.deck.command.BatchedRequest;
+import com.porfiriopartida.deck.command.CatalogDelta;
+import com.porfiriopartida.deck.command.CatalogSnapshot;
 import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandCatalog;
+import com.porfiriopartida.deck.command.CommandLanes;
+import com.porfiriopartida.deck.command.CommandPriority;
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.macro.MacroJob;
+import com.porfiriopartida.deck.macro.MacroPlan;
+import com.porfiriopartida.deck.macro.MacroScheduler;
+import com.porfiriopartida.deck.macro.MacroStep;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import com.porfiriopartida.deck.policy.DispatchPolicy;
+import com.porfiriopartida.deck.policy.PolicyConfig;
+import com.porfiriopartida.deck.util.ConfigWatcher;
+import com.porfiriopartida.deck.obs.OBSCommands;
+import com.porfiriopartida.deck.icon.IconCache;
+import com.porfiriopartida.deck.obs.OBSConnectionSupervisor;
 import com.porfiriopartida.deck.obs.OBSHandler;
+import com.porfiriopartida.deck.obs.OBSTargetConfig;
+import com.porfiriopartida.deck.obs.OBSTargets;
 import com.porfiriopartida.deck.util.FileManager;
 import com.porfiriopartida.exception.ConfigurationValidationException;
+import io.obswebsocket.community.client.message.request.Request;
+import io.obswebsocket.community.client.message.response.RequestResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -14,7 +39,21 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.porfiriopartida.deck.command.CommandReplies.describeFailure;
+import static com.porfiriopartida.deck.command.CommandReplies.done;
+import static com.porfiriopartida.deck.command.CommandReplies.markReported;
 
 public class ServerListener {
     private static final Logger logger = LogManager.getLogger(ServerListener.class);
@@ -22,24 +61,100 @@ public class ServerListener {
     private static final String EXIT_COMMAND = ":quit";
     private boolean isHeadless;
     private Gson gson;
-    Map<String, List<Command>> macrosMap;
+    private volatile Map<String, MacroPlan> macroPlans = Collections.emptyMap();
+    private final ConfigWatcher configWatcher;
     private ServerSocket serverSocket;
-    private boolean isRunning = true;
-    List<Command> commandList;
+    private volatile boolean isRunning = true;
+    private final CommandCatalog commandCatalog = new CommandCatalog();
+    private final Map<String, DeckClient> catalogSubscribers = new ConcurrentHashMap<>();
+    private final EventFanout eventFanout;
+    private final OBSTargets targets;
+    // The default target; macro batches go here.
     OBSHandler handler;
+    private final CommandRegistry commandRegistry = new CommandRegistry();
+    private final DispatchPolicy dispatchPolicy = new DispatchPolicy(PolicyConfig.unrestricted());
+    private final CommandLanes commandLanes = new CommandLanes();
+    private final IconCache iconCache = new IconCache(FileManager.getIconsDirectory(), Constants.ICON_CACHE_SIZE,
+            Constants.ICON_MAX_SIZE);
+    private final MacroScheduler macroScheduler = new MacroScheduler(this::runMacroSteps, Constants.MACRO_SCHEDULER_THREADS);
     private PrintWriter consoleOutput;
+    private final DeckClient consoleClient = new DeckClient() {
+        @Override
+        public String getId() {
+            return "console";
+        }
 
+        @Override
+        public void send(String message) {
+            consoleOutput.println(message);
+        }
+    };
+    private final Set<ClientConnection> clients = ConcurrentHashMap.newKeySet();
+    private ExecutorService clientExecutor;
+    private int maxConnections = Constants.MAX_CLIENT_CONNECTIONS;
+    private int webPort = Constants.WEB_PORT;
+    private boolean webCompression;
+    private Collection<String> webAllowedOrigins = Collections.emptyList();
+    private WebFrontend webFrontend;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final LongAdder acceptedConnections = metrics.counter("obsdeck_client_connections_total");
+    private final LongAdder rejectedConnections = metrics.counter("obsdeck_client_rejections_total");
 
+    /**
+     * Controls the OBS instances listed in obs-targets.json (the local OBS if there is no such file).
+     */
     public ServerListener(boolean isHeadless) throws IOException, ConfigurationValidationException {
+        this(isHeadless, loadTargets());
+    }
+
+    /**
+     * Uses the given OBS handler as the only target; benchmarks pass a stub here.
+     */
+    public ServerListener(boolean isHeadless, OBSHandler handler) throws IOException, ConfigurationValidationException {
+        this(isHeadless, OBSTargets.single(handler));
+    }
+
+    public ServerListener(boolean isHeadless, OBSTargets targets) throws IOException, ConfigurationValidationException {
         gson = new Gson();
         this.isHeadless = isHeadless;
-        commandList = getAvailableCommands();
-        handler = new OBSHandler();
-        handler.connect();
+        reloadCommandsFromDisk();
+        commandCatalog.addListener(this::pushCatalogDelta);
+        this.targets = targets;
+        this.handler = targets.getDefault();
+        eventFanout = new EventFanout(gson, Constants.EVENT_FLUSH_INTERVAL, Constants.EVENT_MAX_CLIENT_BACKLOG);
+        targets.addEventListener(eventFanout);
+        registerServerCommands();
+        OBSCommands.registerAll(commandRegistry, targets);
+        registerGauges();
+        reloadMacrosFromDisk();
+        reloadPoliciesFromDisk();
+        commandRegistry.setDispatchPolicy(dispatchPolicy);
+        commandRegistry.setLanes(commandLanes);
+        commandLanes.addEmergencyListener(new CommandLanes.EmergencyListener() {
+            @Override
+            public void onEmergencyStarted() {
+                macroScheduler.preemptAll();
+            }
+
+            @Override
+            public void onEmergencyFinished() {
+                macroScheduler.releasePreempted();
+            }
+        });
+        configWatcher = new ConfigWatcher(FileManager.getConfigDirectoryPath());
+        configWatcher.onChange(FileManager.MACROS_FILE, this::reloadMacrosFromDisk);
+        configWatcher.onChange(FileManager.POLICIES_FILE, this::reloadPoliciesFromDisk);
+        configWatcher.onChange(FileManager.COMMANDS_FILE, this::reloadCommandsFromDisk);
+        configWatcher.start();
+        targets.connectAll();
         consoleOutput = new PrintWriter(System.out, true);
     }
     public void startListening(final int portNumber) throws IOException {
         serverSocket = new ServerSocket(portNumber);
+        if (webPort > 0) {
+            webFrontend = new WebFrontend(this, webPort, webCompression, webAllowedOrigins);
+            webFrontend.start();
+        }
         startCmdListener();
 
         try {
@@ -55,36 +170,89 @@ public class ServerListener {
     }
 
     private void processMainLoop() throws IOException {
+        clientExecutor = Executors.newCachedThreadPool(namedThreadFactory("deck-client"));
         while (isRunning) {
-            try (Socket clientSocket = serverSocket.accept();
-                 BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                 PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true))  {
-
-                String command;
-                while ((command = in.readLine()) != null) {
-                    if (command.startsWith("MACRO:")) {
-                        // Execute macro
-                        handleMacro(out, command);
-                    } else {
-                        // Execute regular command
-                        String[] commands = command.split(" ");
-                        if(commands.length > 1){
-                            String concatAllExcept0 = String.join(" ", Arrays.copyOfRange(commands, 1, commands.length));
-                            handleCommand(out, commands[0], concatAllExcept0);
-                        } else {
-                            handleCommand(out, commands[0]);
-                        }
-                    }
+            Socket clientSocket;
+            try {
+                clientSocket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!isRunning) {
+                    break;
                 }
+                throw e;
+            }
+
+            if (clients.size() >= maxConnections) {
+                rejectedConnections.increment();
+                rejectClient(clientSocket);
+                continue;
             }
+            acceptedConnections.increment();
+            ClientConnection client = new ClientConnection(this, clientSocket, Constants.CLIENT_OUTBOUND_CAPACITY);
+            clients.add(client);
+            clientExecutor.execute(client);
         }
     }
 
+    private void rejectClient(Socket clientSocket) {
+        logger.warn("Rejecting {}: connection limit ({}) reached.", clientSocket.getRemoteSocketAddress(), maxConnections);
+        try (Socket socket = clientSocket;
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println("Server busy (" + maxConnections + " clients connected)");
+        } catch (IOException e) {
+            logger.debug("Failed to notify rejected client.", e);
+        }
+    }
+
+    /**
+     * Dispatches a line; a handler that throws instead of failing its future fails the returned future too.
+     */
+    CompletableFuture<?> processLine(DeckClient client, String line) {
+        try {
+            return commandRegistry.dispatchLine(client, line);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    CompletableFuture<?> processCommand(DeckClient client, String command, String parameters) {
+        try {
+            return commandRegistry.dispatch(client, command, parameters);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    private static CompletableFuture<?> failed(Throwable error) {
+        CompletableFuture<?> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+
+    void onClientDisconnected(DeckClient client) {
+        clients.remove(client);
+        catalogSubscribers.remove(client.getId());
+        eventFanout.unsubscribe(client.getId());
+        dispatchPolicy.forgetClient(client.getId());
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     private void startCmdListener() {
         Thread terminalInputThread = new Thread(() -> {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
                 while (true) {
                     String input = reader.readLine();
+                    if (input == null) {
+                        break;
+                    }
                     if (input.equals(EXIT_COMMAND)) {
                         isRunning = false;
                         if(serverSocket != null){
@@ -113,84 +281,380 @@ public class ServerListener {
             e.printStackTrace();
         }
 
-        // You can add more cleanup logic here if needed
+        configWatcher.stop();
+        if (webFrontend != null) {
+            webFrontend.stop();
+        }
+        macroScheduler.shutdown();
+        eventFanout.shutdown();
+        drainClients();
+        commandLanes.shutdown();
+        iconCache.shutdown();
+        targets.disconnectAll();
+        FileManager.flushPendingSaves();
     }
 
-    private void handleMacro(PrintWriter out, String command) {
-        String[] parts = command.split(":");
-        String macroName = parts[1];
-
-        List<Command> macroCommandList = getCommandsFromMacro(macroName);
-        out.println("Running Macro:" + macroName);
-
-        for(Command cmd:macroCommandList){
-            if (cmd.getCommand().startsWith(Command.DELAY_COMMAND_TYPE)) {
-                // If the command is DELAY, extract the duration and handle the delay
-                String[] delayParts = cmd.getCommand().split(" ");
-                long duration = Long.parseLong(delayParts[1]);
-                handleDelay(duration);
-            } else {
-                // Otherwise, handle the regular command
-                handleCommand(out, cmd.getCommand(), cmd.getParameters());
+    private void drainClients() {
+        if (clientExecutor == null || clientExecutor.isShutdown()) {
+            return;
+        }
+        // Disconnecting clients leave the set, but their writers may still be flushing.
+        List<ClientConnection> draining = new ArrayList<>(clients);
+        logger.info("Draining {} client(s).", draining.size());
+        for (ClientConnection client : draining) {
+            client.send("Server shutting down.");
+            client.drain();
+        }
+        clientExecutor.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Constants.CLIENT_DRAIN_TIMEOUT);
+        try {
+            boolean readersDone = clientExecutor.awaitTermination(Constants.CLIENT_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            for (ClientConnection client : draining) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0 || !client.awaitWriter(remaining)) {
+                    logger.warn("Client {} did not drain in time, closing its connection.", client.getId());
+                    client.forceClose();
+                }
             }
+            if (!readersDone) {
+                clientExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void handleDelay(long duration) {
+    private void registerGauges() {
+        metrics.gauge("obsdeck_connected_clients", clients::size);
+        // A single target keeps the unlabelled series; several get one series per target.
+        for (Map.Entry<String, OBSHandler> entry : targets.getAll().entrySet()) {
+            String label = targets.size() == 1 ? null : "target";
+            String target = entry.getKey();
+            OBSConnectionSupervisor supervisor = entry.getValue().getSupervisor();
+            metrics.gauge("obsdeck_obs_connected", label, target, () -> supervisor.isConnected() ? 1 : 0);
+            metrics.gauge("obsdeck_obs_pending_requests", label, target, supervisor::getPendingCount);
+            metrics.gauge("obsdeck_obs_heartbeat_latency_ms", label, target, supervisor::getLastLatencyMillis);
+            metrics.counterFunction("obsdeck_obs_reconnects_total", label, target, supervisor::getReconnectCount);
+        }
+        metrics.gauge("obsdeck_macro_jobs", () -> macroScheduler.getJobs().size());
+    }
+
+    private static OBSTargets loadTargets() throws IOException {
+        OBSTargetConfig config = FileManager.loadOBSTargetsFromFile();
+        if (config == null) {
+            throw new IOException("Couldn't read " + FileManager.OBS_TARGETS_FILE + ".");
+        }
         try {
-            Thread.sleep(duration);  // Sleep for the specified duration in mili seconds
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            Thread.currentThread().interrupt();  // Restore interrupted status
+            return OBSTargets.fromConfig(config);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(FileManager.OBS_TARGETS_FILE + ": " + e.getMessage(), e);
         }
     }
 
-    private List<Command> getCommandsFromMacro(String macroName) {
-        // Retrieve the command list for the given macroName
-        return macrosMap.getOrDefault(macroName, Collections.emptyList());
+    private void registerServerCommands() {
+        commandRegistry.register("METRICS", (client, parameters) -> {
+            client.send("METRICS:" + gson.toJson(metrics.snapshot()));
+            return done();
+        }, CommandPriority.BACKGROUND);
+        commandRegistry.register("GET_COMMANDS", (client, parameters) -> {
+            List<Command> commands = getAvailableCommands();
+            String json = gson.toJson(commands);
+            client.send("COMMAND_LIST:" + json);
+            return done();
+        }, CommandPriority.BACKGROUND);
+        commandRegistry.register("GET_COMMANDS_SINCE", (client, parameters) -> {
+            long fromVersion;
+            try {
+                fromVersion = Long.parseLong(parameters.trim());
+            } catch (NumberFormatException e) {
+                fromVersion = -1;
+            }
+            CatalogSnapshot catalog = commandCatalog.snapshot();
+            CatalogDelta delta = catalog.deltaSince(fromVersion);
+            if (delta == null) {
+                JsonObject snapshot = new JsonObject();
+                snapshot.addProperty("version", catalog.getVersion());
+                snapshot.add("commands", gson.toJsonTree(catalog.getCommands()));
+                client.send("COMMAND_SNAPSHOT:" + gson.toJson(snapshot));
+            } else if (delta.isEmpty()) {
+                client.send("COMMAND_LIST_UNCHANGED:" + delta.getToVersion());
+            } else {
+                client.send("COMMAND_DELTA:" + gson.toJson(delta));
+            }
+            return done();
+        }, CommandPriority.BACKGROUND);
+        commandRegistry.register("GET_ICON", this::handleGetIcon, CommandPriority.BACKGROUND);
+        commandRegistry.register("SUBSCRIBE_COMMANDS", (client, parameters) -> {
+            catalogSubscribers.put(client.getId(), client);
+            client.send("SUBSCRIBE_COMMANDS executed. (version=" + commandCatalog.getVersion() + ")");
+            return done();
+        });
+        commandRegistry.register("SUBSCRIBE_EVENTS", (client, parameters) -> {
+            List<String> filters = new ArrayList<>();
+            for (String filter : parameters.split(",")) {
+                if (!filter.trim().isEmpty()) {
+                    filters.add(filter.trim());
+                }
+            }
+            eventFanout.subscribe(client, filters);
+            client.send("SUBSCRIBE_EVENTS executed. (" + (filters.isEmpty() ? "all" : String.join(",", filters)) + ")");
+            return done();
+        });
+        commandRegistry.register("UNSUBSCRIBE_EVENTS", (client, parameters) -> {
+            eventFanout.unsubscribe(client.getId());
+            client.send("UNSUBSCRIBE_EVENTS executed.");
+            return done();
+        });
+        commandRegistry.register("UNSUBSCRIBE_COMMANDS", (client, parameters) -> {
+            catalogSubscribers.remove(client.getId());
+            client.send("UNSUBSCRIBE_COMMANDS executed.");
+            return done();
+        });
+        commandRegistry.register("MACRO", this::handleMacro, CommandPriority.BACKGROUND);
+        commandRegistry.register("MACRO_CANCEL", (client, target) -> handleMacroControl(client, "MACRO_CANCEL", target));
+        commandRegistry.register("MACRO_PAUSE", (client, target) -> handleMacroControl(client, "MACRO_PAUSE", target));
+        commandRegistry.register("MACRO_RESUME", (client, target) -> handleMacroControl(client, "MACRO_RESUME", target));
+        commandRegistry.register("MACRO_LIST", (client, parameters) -> {
+            StringBuilder jobs = new StringBuilder("MACRO_LIST:");
+            for (MacroJob job : macroScheduler.getJobs()) {
+                jobs.append(job).append(';');
+            }
+            client.send(jobs.toString());
+            return done();
+        }, CommandPriority.BACKGROUND);
+    }
+
+    /**
+     * {@code GET_ICON <name>[|<size>[|<etag>]]}: replies {@code ICON:} with the PNG in Base64 and its ETag, or
+     * {@code ICON_NOT_MODIFIED:} when the client already has that ETag for the size.
+     */
+    private CompletableFuture<?> handleGetIcon(DeckClient client, String parameters) {
+        String[] parts = parameters.split("\\|", -1);
+        String name = parts[0].trim();
+        int size = Constants.ICON_DEFAULT_SIZE;
+        if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+            try {
+                size = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException e) {
+                client.send("GET_ICON failed: invalid size " + parts[1].trim());
+                return done();
+            }
+        }
+        String knownEtag = parts.length > 2 ? parts[2].trim() : "";
+        return markReported(iconCache.load(name, size).whenComplete((icon, error) -> {
+            if (error != null) {
+                client.send("GET_ICON failed: " + describeFailure(error));
+                return;
+            }
+            JsonObject reply = new JsonObject();
+            reply.addProperty("name", icon.getName());
+            reply.addProperty("size", icon.getSize());
+            reply.addProperty("etag", icon.getEtag());
+            if (icon.getEtag().equals(knownEtag)) {
+                client.send("ICON_NOT_MODIFIED:" + gson.toJson(reply));
+            } else {
+                reply.addProperty("data", icon.getBase64());
+                String message = "ICON:" + gson.toJson(reply);
+                // Kept within one binary frame so every client gets the icon whole, whatever protocol version it speaks.
+                int length = message.getBytes(StandardCharsets.UTF_8).length;
+                if (length > Constants.ICON_MAX_REPLY_LENGTH) {
+                    client.send("GET_ICON failed: too large (" + length + " bytes at " + icon.getSize()
+                            + "px), ask for a smaller size");
+                    return;
+                }
+                client.send(message);
+            }
+        }));
     }
 
-    private void handleCommand(PrintWriter out, String command) {
-        this.handleCommand(out, command, "");
+    public IconCache getIconCache() {
+        return iconCache;
     }
-    public void handleCommand(String command, String parameters){
-        this.handleCommand(consoleOutput, command, parameters);
+
+    private CompletableFuture<?> handleMacro(DeckClient client, String macroName) {
+        MacroPlan plan = macroPlans.get(macroName);
+        if (plan == null) {
+            client.send("Macro not found (" + macroName + ")");
+            return done();
+        }
+        client.send("Running Macro:" + macroName);
+
+        MacroJob job = macroScheduler.start(plan, client);
+        client.send("MACRO_JOB:" + macroName + ":" + job.getId());
+        return done();
     }
-    private void handleCommand(PrintWriter out, String command, String parameters) {
-        switch (command){
-            case "GET_COMMANDS":
-                List<Command> commands = getAvailableCommands();
-                String json = gson.toJson(commands);
-                out.println("COMMAND_LIST:" + json);
-                break;
-            case "ToggleMute":
-                handler.toggleMute(parameters);
-                out.println("Toggle Mute executed.");
+
+    private CompletableFuture<?> handleMacroControl(DeckClient client, String action, String target) {
+        target = target.trim();
+
+        if ("*".equals(target) && "MACRO_CANCEL".equals(action)) {
+            macroScheduler.cancelAll();
+            client.send("MACRO_CANCEL:* executed.");
+            return done();
+        }
+        MacroJob job = macroScheduler.find(target);
+        if (job == null) {
+            client.send(action + " failed: no running macro " + target);
+            return done();
+        }
+        boolean changed;
+        switch (action) {
+            case "MACRO_CANCEL":
+                changed = macroScheduler.cancel(job);
                 break;
-            case "Transition":
-                handler.transition();
-                out.println("Transition executed.");
+            case "MACRO_PAUSE":
+                changed = macroScheduler.pause(job);
                 break;
-            case "ToggleCamera":
-                handler.toggleCamera();
-                out.println("Toggle Camera executed.");
+            case "MACRO_RESUME":
+                changed = macroScheduler.resume(job);
                 break;
             default:
-                out.println("Command not found (" + command + ")");
-                break;
+                client.send("Command not found (" + action + ")");
+                return done();
         }
-        // Implement your logic to execute the received command here
+        client.send(action + ":" + job.getMacroName() + ":" + job.getId() + (changed ? " executed." : " ignored (" + job.getState() + ")"));
+        return done();
     }
 
-    public List<Command> getAvailableCommands() {
-        if(commandList == null || commandList.isEmpty()){
-            reloadCommandsFromDisk();
+    /**
+     * Runs a segment of consecutive macro steps for the scheduler: as one OBS batch when every step has a
+     * request equivalent, otherwise one command after another without blocking.
+     */
+    private CompletableFuture<?> runMacroSteps(MacroJob job, int firstStepIndex, List<MacroStep> steps) {
+        List<CompletableFuture<BatchedRequest>> batch = compileMacroBatch(steps);
+        if (batch != null) {
+            return submitMacroBatch(job.getClient(), job.getMacroName(), firstStepIndex, steps, batch);
+        }
+        CompletableFuture<?> chain = done();
+        for (MacroStep step : steps) {
+            chain = chain.handle((ignored, error) -> null)
+                    .thenCompose(ignored -> job.getState() == MacroJob.State.CANCELLED
+                            ? done()
+                            : step.getHandler().handle(job.getClient(), step.getParameters()).thenApply(result -> null));
         }
-        return commandList;
+        return chain;
+    }
+
+    /**
+     * Translates every macro step into an OBS request, or returns null when a step has no batch equivalent. A
+     * segment that repeats a step also runs one step at a time: each toggle is computed from the current state, so
+     * the second one has to see the first one's result.
+     */
+    private List<CompletableFuture<BatchedRequest>> compileMacroBatch(List<MacroStep> steps) {
+        Set<String> distinct = new HashSet<>();
+        for (MacroStep step : steps) {
+            if (!distinct.add(step.getCommand() + " " + step.getParameters())) {
+                return null;
+            }
+        }
+        List<CompletableFuture<BatchedRequest>> requests = new ArrayList<>(steps.size());
+        for (MacroStep cmd : steps) {
+            CompletableFuture<BatchedRequest> request = toBatchRequest(cmd);
+            if (request == null) {
+                return null;
+            }
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private CompletableFuture<BatchedRequest> toBatchRequest(MacroStep step) {
+        if (!(step.getHandler() instanceof BatchableCommandHandler)) {
+            return null;
+        }
+        return ((BatchableCommandHandler) step.getHandler()).toRequest(step.getParameters());
+    }
+
+    private CompletableFuture<?> submitMacroBatch(DeckClient client, String macroName, int firstStepIndex,
+                                                  List<MacroStep> steps, List<CompletableFuture<BatchedRequest>> compiled) {
+        return CompletableFuture.allOf(compiled.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(ignored -> {
+                    List<Request<?>> requests = new ArrayList<>(compiled.size());
+                    for (CompletableFuture<BatchedRequest> request : compiled) {
+                        requests.add(request.join().getRequest());
+                        request.join().sent();
+                    }
+                    return handler.sendBatch(requests, Constants.DEFAULT_TIMEOUT).whenComplete((results, error) -> {
+                        if (error != null) {
+                            for (CompletableFuture<BatchedRequest> request : compiled) {
+                                request.join().failed();
+                            }
+                        }
+                    });
+                })
+                .whenComplete((results, error) -> {
+                    if (error != null) {
+                        client.send("Macro " + macroName + " failed: " + describeFailure(error));
+                        return;
+                    }
+                    for (int i = 0; i < results.size() && i < steps.size(); i++) {
+                        RequestResponse.Status status = results.get(i).getRequestStatus();
+                        boolean ok = Boolean.TRUE.equals(status.getResult());
+                        client.send("MACRO_STEP:" + macroName + ":" + (firstStepIndex + i) + ":" + steps.get(i).getCommand() + ":"
+                                + (ok ? "OK" : "FAILED " + status.getComment()));
+                    }
+                });
+    }
+
+    public void reloadMacrosFromDisk() {
+        Map<String, List<Command>> definitions = FileManager.loadMacrosFromFile();
+        Map<String, MacroPlan> plans = new HashMap<>();
+        for (Map.Entry<String, List<Command>> entry : definitions.entrySet()) {
+            try {
+                plans.put(entry.getKey(), MacroPlan.compile(entry.getKey(), entry.getValue(), commandRegistry));
+            } catch (IllegalArgumentException e) {
+                logger.error("Skipping macro {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        macroPlans = plans;
+        logger.info("Loaded {} macro(s).", plans.size());
+    }
+
+    /**
+     * Keeps the current policies when policies.json can't be parsed, so a typo doesn't lift every limit mid-show.
+     */
+    public void reloadPoliciesFromDisk() {
+        PolicyConfig policies = FileManager.loadPoliciesFromFile();
+        if (policies != null) {
+            dispatchPolicy.setConfig(policies);
+            logger.info("Loaded dispatch policies.");
+        }
+    }
+
+    public CompletableFuture<?> handleCommand(String command, String parameters){
+        return commandRegistry.dispatch(consoleClient, command, parameters == null ? "" : parameters);
+    }
+
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    /**
+     * Returns the in-memory catalog; commands.json is only read at startup and when the config watcher sees it change.
+     */
+    public List<Command> getAvailableCommands() {
+        return commandCatalog.getCommands();
     }
 
     public void reloadCommandsFromDisk(){
-        commandList = FileManager.loadCommandsFromFile();
+        List<Command> commands = FileManager.loadCommandsFromFile();
+        if (commands != null) {
+            commandCatalog.replaceAll(commands);
+        }
+    }
+
+    public CommandCatalog getCommandCatalog() {
+        return commandCatalog;
+    }
+
+    private void pushCatalogDelta(CatalogDelta delta) {
+        if (catalogSubscribers.isEmpty()) {
+            return;
+        }
+        String message = "COMMAND_DELTA:" + gson.toJson(delta);
+        for (DeckClient subscriber : catalogSubscribers.values()) {
+            subscriber.send(message);
+        }
     }
 
     public boolean isRunning() {
@@ -200,25 +664,52 @@ public class ServerListener {
     public void removeCommand(Command toRemove) {
         UUID targetUUID = toRemove.getUuid();
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Server Listener");
-        sb.append("\nRemoving " + toRemove.getLabel());
-        sb.append("\nID " + targetUUID);
-        sb.append("\nTotal Commands: " + commandList.size());
-
+        boolean removed = commandCatalog.remove(targetUUID);
+        logger.debug("Removing {} ({}): {}, {} command(s) left", toRemove.getLabel(), targetUUID,
+                removed ? "removed" : "not found", commandCatalog.getCommands().size());
+    }
 
-        for (Iterator<Command> iterator = commandList.iterator(); iterator.hasNext();) {
-            Command command = iterator.next();
-            if (command.getUuid().equals(targetUUID)) {
-                iterator.remove();
-                break;
-            }
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum connections must be at least 1, got " + maxConnections);
         }
-        sb.append("\nNew Total Commands: " + commandList.size());
-        logger.debug(sb);
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Applies to raw TCP clients and, separately, to WebSocket clients.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Port for the WebSocket/HTTP front end, started with the TCP listener; 0 or less leaves it off.
+     */
+    public void setWebPort(int webPort) {
+        this.webPort = webPort;
+    }
+
+    /**
+     * Negotiates permessage-deflate with WebSocket clients that offer it. Off by default for latency.
+     */
+    public void setWebCompression(boolean webCompression) {
+        this.webCompression = webCompression;
+    }
+
+    /**
+     * Browser origins allowed to use the front end ({@code *} for any); requests without an Origin are always allowed.
+     */
+    public void setWebAllowedOrigins(Collection<String> webAllowedOrigins) {
+        this.webAllowedOrigins = webAllowedOrigins;
+    }
+
+    public int getConnectedClientCount() {
+        return clients.size();
     }
 
     public void stop() {
         isRunning = false;
+        cleanup();
     }
 }
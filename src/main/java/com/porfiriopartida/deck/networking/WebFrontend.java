@@ -0,0 +1,492 @@
+package com.porfiriopartida.deck.networking;
+
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets browser control panels talk to the deck without a bridge process, on a port next to the TCP listener:
+ * <ul>
+ * <li>a WebSocket upgrade on any path gives a client that behaves like a text protocol connection</li>
+ * <li>{@code POST /command} with the command line as body (or {@code ?line=}) is a fire-and-forget trigger,
+ * answered with 202 as soon as it is dispatched</li>
+ * </ul>
+ * Both go through the server's dispatcher, so policies, priority lanes and metrics apply as for any other client.
+ * <p>
+ * permessage-deflate is only negotiated when enabled: a button press is a few bytes and compressing it costs more
+ * latency than it saves. Requests carrying an {@code Origin} header are refused unless that origin is allowed, so
+ * an unrelated page open in the operator's browser can't press buttons.
+ * <p>
+ * Connections that haven't upgraded are capped and time out when idle or when a request trickles in too slowly,
+ * so a client holding sockets open can't use up threads.
+ */
+public class WebFrontend {
+    private static final Logger logger = LogManager.getLogger(WebFrontend.class);
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String COMMAND_PATH = "/command";
+    private static final String ANY_ORIGIN = "*";
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_HEADERS = 100;
+    private static final int MAX_BODY_LENGTH = 64 * 1024;
+
+    private final ServerListener server;
+    private final int port;
+    private final boolean compression;
+    private final Set<String> allowedOrigins;
+    private final Set<WebSocketConnection> sessions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final LongAdder acceptedSessions = metrics.counter("obsdeck_web_sessions_total");
+    private final LongAdder triggers = metrics.counter("obsdeck_http_triggers_total");
+    private final LongAdder refusedOrigins = metrics.counter("obsdeck_web_refused_origins_total");
+    private final LongAdder refusedConnections = metrics.counter("obsdeck_web_refused_connections_total");
+    // Plain HTTP connections being served; only the accept thread increments it.
+    private final AtomicInteger httpConnections = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public WebFrontend(ServerListener server, int port, boolean compression, Collection<String> allowedOrigins) {
+        this.server = server;
+        this.port = port;
+        this.compression = compression;
+        this.allowedOrigins = new HashSet<>(allowedOrigins);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "deck-web-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.gauge("obsdeck_web_sessions", sessions::size);
+        metrics.gauge("obsdeck_web_http_connections", httpConnections::get);
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        Thread acceptThread = new Thread(this::acceptLoop, "deck-web-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        logger.info("Web front end listening on port {} (compression {}).", port, compression ? "on" : "off");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Web front end socket already closed.");
+        }
+        for (WebSocketConnection session : sessions) {
+            session.close(WebSocketConnection.CLOSE_GOING_AWAY, "Server shutting down");
+        }
+        executor.shutdownNow();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running && !serverSocket.isClosed()) {
+                    logger.warn("Web front end accept failed: {}", e.getMessage());
+                    continue;
+                }
+                return;
+            }
+            if (httpConnections.get() >= Constants.WEB_MAX_HTTP_CONNECTIONS) {
+                refusedConnections.increment();
+                logger.warn("Refusing web connection from {}: {} HTTP connections open.",
+                        socket.getInetAddress().getHostAddress(), Constants.WEB_MAX_HTTP_CONNECTIONS);
+                closeQuietly(socket);
+                continue;
+            }
+            httpConnections.incrementAndGet();
+            try {
+                executor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                httpConnections.decrementAndGet();
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Answers HTTP requests on the connection (keep-alive) until it is closed or upgraded to a WebSocket.
+     */
+    private void serve(Socket socket) {
+        boolean counted = true;
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(Constants.WEB_HTTP_READ_TIMEOUT);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            HttpRequest request;
+            while ((request = HttpRequest.read(in, System.currentTimeMillis() + Constants.WEB_HTTP_REQUEST_TIMEOUT)) != null) {
+                request.remoteAddress = socket.getInetAddress().getHostAddress();
+                if (!isOriginAllowed(request.header("origin"))) {
+                    refusedOrigins.increment();
+                    logger.warn("Refused web request from origin {}; allow it with --web-origins.", request.header("origin"));
+                    respond(out, 403, "Origin not allowed", null, false);
+                    break;
+                }
+                if ("websocket".equalsIgnoreCase(request.header("upgrade"))) {
+                    // A WebSocket counts against the session limit instead and may stay quiet for as long as it likes.
+                    httpConnections.decrementAndGet();
+                    counted = false;
+                    socket.setSoTimeout(0);
+                    upgrade(socket, in, out, request);
+                    return;
+                }
+                if (!handle(request, out)) {
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            logger.debug("Closing idle web connection from {}.", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            logger.debug("Web request from {} failed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            if (counted) {
+                httpConnections.decrementAndGet();
+            }
+        }
+        closeQuietly(socket);
+    }
+
+    /**
+     * Answers one plain HTTP request; returns whether the connection can take another one.
+     */
+    private boolean handle(HttpRequest request, OutputStream out) throws IOException {
+        String origin = request.header("origin");
+        boolean keepAlive = request.isKeepAlive();
+        if (request.header("transfer-encoding") != null) {
+            respond(out, 411, "Send a Content-Length", origin, false);
+            return false;
+        }
+        if (!COMMAND_PATH.equals(request.path)) {
+            respond(out, 404, "Not found", origin, keepAlive);
+            return keepAlive;
+        }
+        if ("OPTIONS".equals(request.method)) {
+            // CORS preflight, e.g. for a fetch() with a JSON content type.
+            respond(out, 204, null, origin, keepAlive);
+            return keepAlive;
+        }
+        if (!"POST".equals(request.method)) {
+            respond(out, 405, "Use POST", origin, keepAlive);
+            return keepAlive;
+        }
+        String line = request.query.containsKey("line")
+                ? request.query.get("line")
+                : new String(request.body, StandardCharsets.UTF_8).trim();
+        if (line.isEmpty()) {
+            respond(out, 400, "Missing command line", origin, keepAlive);
+            return keepAlive;
+        }
+        triggers.increment();
+        TriggerClient client = new TriggerClient(request.remoteAddress);
+        server.processLine(client, line)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        CommandReplies.reportFailure(client, error);
+                    }
+                });
+        respond(out, 202, "Accepted", origin, keepAlive);
+        return keepAlive;
+    }
+
+    private void upgrade(Socket socket, InputStream in, OutputStream out, HttpRequest request) throws IOException {
+        String key = request.header("sec-websocket-key");
+        if (!"GET".equals(request.method) || key == null) {
+            respond(out, 400, "Bad WebSocket upgrade", null, false);
+            closeQuietly(socket);
+            return;
+        }
+        if (!"13".equals(request.header("sec-websocket-version"))) {
+            out.write("HTTP/1.1 426 Upgrade Required\r\nSec-WebSocket-Version: 13\r\nContent-Length: 0\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            closeQuietly(socket);
+            return;
+        }
+        if (sessions.size() >= server.getMaxConnections()) {
+            logger.warn("Rejecting web client {}: connection limit ({}) reached.", request.remoteAddress, server.getMaxConnections());
+            respond(out, 503, "Server busy", null, false);
+            closeQuietly(socket);
+            return;
+        }
+        boolean deflate = compression && acceptsDeflate(request.header("sec-websocket-extensions"));
+        StringBuilder response = new StringBuilder()
+                .append("HTTP/1.1 101 Switching Protocols\r\n")
+                .append("Upgrade: websocket\r\n")
+                .append("Connection: Upgrade\r\n")
+                .append("Sec-WebSocket-Accept: ").append(acceptKey(key)).append("\r\n");
+        if (deflate) {
+            response.append("Sec-WebSocket-Extensions: permessage-deflate; server_no_context_takeover; client_no_context_takeover\r\n");
+        }
+        response.append("\r\n");
+        out.write(response.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        WebSocketConnection session = new WebSocketConnection(server, socket, in, out, Constants.CLIENT_OUTBOUND_CAPACITY, deflate);
+        acceptedSessions.increment();
+        sessions.add(session);
+        try {
+            session.run();
+        } finally {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * Whether one of the offers is permessage-deflate without a server window limit, which java.util.zip can't honour.
+     */
+    private static boolean acceptsDeflate(String extensions) {
+        if (extensions == null) {
+            return false;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] parameters = offer.split(";");
+            if (!"permessage-deflate".equals(parameters[0].trim())) {
+                continue;
+            }
+            boolean limitsServerWindow = false;
+            for (int i = 1; i < parameters.length; i++) {
+                limitsServerWindow |= parameters[i].trim().startsWith("server_max_window_bits");
+            }
+            if (!limitsServerWindow) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOriginAllowed(String origin) {
+        return origin == null || allowedOrigins.contains(ANY_ORIGIN) || allowedOrigins.contains(origin);
+    }
+
+    private void respond(OutputStream out, int status, String text, String origin, boolean keepAlive) throws IOException {
+        byte[] body = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        if (origin != null && isOriginAllowed(origin)) {
+            head.append("Access-Control-Allow-Origin: ").append(origin).append("\r\n")
+                    .append("Access-Control-Allow-Methods: POST, OPTIONS\r\n")
+                    .append("Access-Control-Allow-Headers: Content-Type\r\n")
+                    .append("Vary: Origin\r\n");
+        }
+        if (status == 405) {
+            head.append("Allow: POST, OPTIONS\r\n");
+        }
+        if (body.length > 0) {
+            head.append("Content-Type: text/plain; charset=utf-8\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 400: return "Bad Request";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 411: return "Length Required";
+            case 503: return "Service Unavailable";
+            default: return "Status";
+        }
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Web socket already closed.");
+        }
+    }
+
+    /**
+     * The issuer of one HTTP trigger. Nobody is listening for its replies, so they only go to the debug log; rate
+     * limits apply per remote address.
+     */
+    private static class TriggerClient implements DeckClient {
+        private final String id;
+
+        private TriggerClient(String remoteAddress) {
+            this.id = "http-" + remoteAddress;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void send(String message) {
+            logger.debug("{}: {}", id, message);
+        }
+    }
+
+    private static class HttpRequest {
+        private String method;
+        private String path;
+        private String version;
+        private String remoteAddress;
+        private final Map<String, String> query = new HashMap<>();
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body = new byte[0];
+
+        /**
+         * Reads the next request from a keep-alive connection, or returns null once the client closed it. Fails
+         * with a {@link SocketTimeoutException} if the request isn't complete by the deadline.
+         */
+        static HttpRequest read(InputStream in, long deadline) throws IOException {
+            String requestLine = readLine(in, deadline);
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3) {
+                throw new IOException("Malformed request line");
+            }
+            HttpRequest request = new HttpRequest();
+            request.method = parts[0];
+            request.version = parts[2];
+            int queryStart = parts[1].indexOf('?');
+            request.path = queryStart < 0 ? parts[1] : parts[1].substring(0, queryStart);
+            if (queryStart >= 0) {
+                for (String pair : parts[1].substring(queryStart + 1).split("&")) {
+                    int equals = pair.indexOf('=');
+                    if (equals > 0) {
+                        request.query.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+                    }
+                }
+            }
+            String line;
+            while ((line = readLine(in, deadline)) != null && !line.isEmpty()) {
+                if (request.headers.size() >= MAX_HEADERS) {
+                    throw new IOException("Too many headers");
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    request.headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            String contentLength = request.header("content-length");
+            if (contentLength != null) {
+                int length;
+                try {
+                    length = Integer.parseInt(contentLength);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad Content-Length");
+                }
+                if (length < 0 || length > MAX_BODY_LENGTH) {
+                    throw new IOException("Body too large: " + length);
+                }
+                request.body = new byte[length];
+                int offset = 0;
+                while (offset < length) {
+                    checkDeadline(deadline);
+                    int read = in.read(request.body, offset, length - offset);
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                    offset += read;
+                }
+            }
+            return request;
+        }
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        boolean isKeepAlive() {
+            String connection = header("connection");
+            if ("HTTP/1.0".equals(version)) {
+                return connection != null && connection.toLowerCase(Locale.ROOT).contains("keep-alive");
+            }
+            return connection == null || !connection.toLowerCase(Locale.ROOT).contains("close");
+        }
+
+        private static String decode(String value) throws IOException {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        }
+
+        private static void checkDeadline(long deadline) throws SocketTimeoutException {
+            if (System.currentTimeMillis() > deadline) {
+                throw new SocketTimeoutException("Request took too long");
+            }
+        }
+
+        private static String readLine(InputStream in, long deadline) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                checkDeadline(deadline);
+                if (c == '\n') {
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') {
+                        line.setLength(end - 1);
+                    }
+                    return line.toString();
+                }
+                if (line.length() >= MAX_LINE_LENGTH) {
+                    throw new IOException("Header line too long");
+                }
+                line.append((char) c);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+    }
+}
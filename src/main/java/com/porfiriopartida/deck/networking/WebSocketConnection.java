@@ -0,0 +1,360 @@
+package com.porfiriopartida.deck.networking;
+
+import com.porfiriopartida.deck.command.CommandReplies;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One WebSocket client, usually a browser control panel. Every text message is a command line and every reply or
+ * event goes back as a text message, exactly like the text protocol of {@link ClientConnection}, including its
+ * bounded outbound queue drained by a writer thread.
+ * <p>
+ * With permessage-deflate negotiated (no context takeover either way), outgoing messages are compressed by the
+ * writer and incoming compressed messages inflated by the reader; otherwise frames are sent as is.
+ */
+class WebSocketConnection implements DeckClient, Runnable {
+    private static final Logger logger = LogManager.getLogger(WebSocketConnection.class);
+    private static final AtomicInteger idSequence = new AtomicInteger();
+    private static final long WRITER_POLL_MILLIS = 250L;
+    private static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+    private static final byte[] DEFLATE_TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+    static final int CLOSE_NORMAL = 1000;
+    static final int CLOSE_GOING_AWAY = 1001;
+    static final int CLOSE_PROTOCOL_ERROR = 1002;
+    static final int CLOSE_UNSUPPORTED_DATA = 1003;
+    static final int CLOSE_TOO_BIG = 1009;
+
+    private final ServerListener server;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String id;
+    private final BlockingQueue<String> outbound;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private volatile boolean closing;
+    private boolean closeSent;
+
+    WebSocketConnection(ServerListener server, Socket socket, InputStream in, OutputStream out, int outboundCapacity,
+                        boolean compression) {
+        this.server = server;
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.id = "web-" + idSequence.incrementAndGet();
+        this.outbound = new ArrayBlockingQueue<>(outboundCapacity);
+        this.deflater = compression ? new Deflater(Deflater.BEST_SPEED, true) : null;
+        this.inflater = compression ? new Inflater(true) : null;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int getPendingOutbound() {
+        return outbound.size();
+    }
+
+    @Override
+    public void send(String message) {
+        if (!outbound.offer(message)) {
+            logger.warn("Outbound queue full for {}, dropping message.", id);
+        }
+    }
+
+    @Override
+    public void run() {
+        Thread writerThread = new Thread(this::writeLoop, id + "-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        logger.info("Web client connected: {} ({}{})", id, socket.getRemoteSocketAddress(),
+                deflater != null ? ", compressed" : "");
+        try {
+            String line;
+            while ((line = readMessage()) != null) {
+                server.processLine(this, line)
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                CommandReplies.reportFailure(this, error);
+                            }
+                        });
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                logger.warn("Web client {} read failed: {}", id, e.getMessage());
+            }
+        } finally {
+            closing = true;
+            if (inflater != null) {
+                inflater.end();
+            }
+            server.onClientDisconnected(this);
+            logger.info("Web client disconnected: {}", id);
+        }
+    }
+
+    /**
+     * Sends a close frame right away and drops the connection; used when the server shuts down.
+     */
+    void close(int code, String reason) {
+        closing = true;
+        try {
+            writeClose(code, reason);
+        } catch (IOException e) {
+            logger.debug("Web client {} already gone.", id);
+        }
+        closeSocket();
+    }
+
+    /**
+     * Returns the next complete text message, answering pings on the way, or null once the peer closed.
+     */
+    String readMessage() throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        boolean compressed = false;
+        boolean inMessage = false;
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return null;
+            }
+            int second = readByte();
+            boolean fin = (first & 0x80) != 0;
+            boolean rsv1 = (first & 0x40) != 0;
+            int opcode = first & 0x0F;
+            long length = second & 0x7F;
+            if ((second & 0x80) == 0) {
+                fail(CLOSE_PROTOCOL_ERROR, "Client frames must be masked");
+            }
+            if (length == 126) {
+                length = (readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | readByte();
+                }
+                // RFC 6455 requires the most significant bit to be 0; otherwise the length reads as negative.
+                if (length < 0) {
+                    fail(CLOSE_PROTOCOL_ERROR, "Invalid frame length");
+                }
+            }
+            if (length > MAX_MESSAGE_LENGTH || message.size() + length > MAX_MESSAGE_LENGTH) {
+                fail(CLOSE_TOO_BIG, "Message too large");
+            }
+            byte[] mask = new byte[4];
+            readFully(mask);
+            byte[] payload = new byte[(int) length];
+            readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+
+            switch (opcode) {
+                case OP_PING:
+                    writeFrame(OP_PONG, false, payload);
+                    break;
+                case OP_PONG:
+                    break;
+                case OP_CLOSE:
+                    int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : CLOSE_NORMAL;
+                    writeClose(code, "");
+                    return null;
+                case OP_TEXT:
+                case OP_CONTINUATION:
+                    if (opcode == OP_TEXT) {
+                        if (inMessage) {
+                            fail(CLOSE_PROTOCOL_ERROR, "Expected a continuation frame");
+                        }
+                        inMessage = true;
+                        compressed = rsv1;
+                        if (compressed && inflater == null) {
+                            fail(CLOSE_PROTOCOL_ERROR, "Compression was not negotiated");
+                        }
+                    } else if (!inMessage) {
+                        fail(CLOSE_PROTOCOL_ERROR, "Continuation without a message");
+                    }
+                    message.write(payload);
+                    if (fin) {
+                        byte[] data = compressed ? inflate(message.toByteArray()) : message.toByteArray();
+                        return new String(data, StandardCharsets.UTF_8).trim();
+                    }
+                    break;
+                case OP_BINARY:
+                    fail(CLOSE_UNSUPPORTED_DATA, "Only text messages are supported");
+                    break;
+                default:
+                    fail(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+            }
+        }
+    }
+
+    private void fail(int code, String reason) throws IOException {
+        writeClose(code, reason);
+        throw new IOException(reason);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                String message = outbound.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    if (closing) {
+                        break;
+                    }
+                    continue;
+                }
+                byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+                if (deflater != null) {
+                    writeFrame(OP_TEXT, true, deflate(payload));
+                } else {
+                    writeFrame(OP_TEXT, false, payload);
+                }
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                logger.warn("Web client {} write failed: {}", id, e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closing = true;
+            closeSocket();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeClose(int code, String reason) throws IOException {
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + Math.min(text.length, 123)];
+        payload[0] = (byte) (code >> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(text, 0, payload, 2, payload.length - 2);
+        writeFrame(OP_CLOSE, false, payload);
+    }
+
+    private synchronized void writeFrame(int opcode, boolean compressed, byte[] payload) throws IOException {
+        if (closeSent) {
+            return;
+        }
+        if (opcode == OP_CLOSE) {
+            closeSent = true;
+        }
+        out.write(0x80 | (compressed ? 0x40 : 0) | opcode);
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            out.write(126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+        } else {
+            out.write(127);
+            long length = payload.length;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (length >>> shift));
+            }
+        }
+        out.write(payload);
+        // The writer flushes once its queue is empty; control frames go out right away.
+        if (opcode != OP_TEXT || outbound.isEmpty()) {
+            out.flush();
+        }
+    }
+
+    private byte[] deflate(byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 16);
+        byte[] buffer = new byte[Math.max(64, data.length)];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, count);
+        } while (count == buffer.length);
+        byte[] result = compressed.toByteArray();
+        // RFC 7692: a message ends with the empty stored block of the sync flush, minus its last four bytes.
+        int length = result.length;
+        if (length >= 4 && result[length - 4] == 0 && result[length - 3] == 0
+                && result[length - 2] == (byte) 0xFF && result[length - 1] == (byte) 0xFF) {
+            length -= 4;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(result, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private byte[] inflate(byte[] data) throws IOException {
+        inflater.reset();
+        byte[] input = new byte[data.length + DEFLATE_TAIL.length];
+        System.arraycopy(data, 0, input, 0, data.length);
+        System.arraycopy(DEFLATE_TAIL, 0, input, data.length, DEFLATE_TAIL.length);
+        inflater.setInput(input);
+        ByteArrayOutputStream message = new ByteArrayOutputStream(data.length * 2);
+        byte[] buffer = new byte[1024];
+        try {
+            while (!inflater.needsInput() && !inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                message.write(buffer, 0, count);
+                if (message.size() > MAX_MESSAGE_LENGTH) {
+                    fail(CLOSE_TOO_BIG, "Message too large");
+                }
+            }
+        } catch (DataFormatException e) {
+            fail(CLOSE_PROTOCOL_ERROR, "Invalid compressed message");
+        }
+        return message.toByteArray();
+    }
+
+    private int readByte() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Web client {} socket already closed.", id);
+        }
+    }
+}
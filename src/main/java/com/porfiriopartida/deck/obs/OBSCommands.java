@@ -0,0 +1,212 @@
+package com.porfiriopartida.deck.obs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.porfiriopartida.deck.command.BatchableCommandHandler;
+import com.porfiriopartida.deck.command.BatchedRequest;
+import com.porfiriopartida.deck.command.CommandPriority;
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.networking.DeckClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static com.porfiriopartida.deck.command.CommandReplies.reply;
+
+/**
+ * The OBS actions exposed to deck clients. Each takes an optional target prefix ({@code @name}, {@code @a,b} or
+ * {@code @*}, see {@link OBSTargets#route(String)}); several targets run in parallel and get one combined reply.
+ */
+public class OBSCommands {
+    private static final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    public static void registerAll(CommandRegistry registry, OBSHandler handler) {
+        registerAll(registry, OBSTargets.single(handler));
+    }
+
+    public static void registerAll(CommandRegistry registry, OBSTargets targets) {
+        registry.register("OBS_STATUS", (client, parameters) -> {
+            OBSTargets.Route route;
+            try {
+                route = targets.route(parameters);
+            } catch (IllegalArgumentException e) {
+                client.send("OBS_STATUS failed: " + e.getMessage());
+                return CommandReplies.failedAfterReply(e);
+            }
+            for (String name : route.getTargets()) {
+                OBSConnectionSupervisor supervisor = targets.get(name).getSupervisor();
+                client.send("OBS_STATUS:" + (route.isSingle() ? "" : "@" + name + " ") + supervisor.getState()
+                        + " latency=" + supervisor.getLastLatencyMillis() + "ms"
+                        + " reconnects=" + supervisor.getReconnectCount()
+                        + " queued=" + supervisor.getPendingCount());
+            }
+            return CommandReplies.done();
+        }, CommandPriority.BACKGROUND);
+
+        registry.register("OBS_HEALTH", (client, parameters) -> {
+            Map<String, Object> health = new LinkedHashMap<>();
+            for (Map.Entry<String, OBSHandler> entry : targets.getAll().entrySet()) {
+                OBSConnectionSupervisor supervisor = entry.getValue().getSupervisor();
+                Map<String, Object> target = new LinkedHashMap<>();
+                target.put("default", entry.getKey().equals(targets.getDefaultName()));
+                target.put("state", supervisor.getState());
+                target.put("latencyMs", supervisor.getLastLatencyMillis());
+                target.put("reconnects", supervisor.getReconnectCount());
+                target.put("queued", supervisor.getPendingCount());
+                health.put(entry.getKey(), target);
+            }
+            client.send("OBS_HEALTH:" + gson.toJson(health));
+            return CommandReplies.done();
+        }, CommandPriority.BACKGROUND);
+
+        registry.register("GET_STATE", (client, parameters) -> {
+            OBSTargets.Route route;
+            try {
+                route = targets.route(parameters);
+            } catch (IllegalArgumentException e) {
+                client.send("GET_STATE failed: " + e.getMessage());
+                return CommandReplies.failedAfterReply(e);
+            }
+            if (route.isSingle()) {
+                client.send("OBS_STATE:" + gson.toJson(targets.get(route.getTargets().get(0)).getStateMirror().snapshot()));
+            } else {
+                Map<String, Object> states = new LinkedHashMap<>();
+                for (String name : route.getTargets()) {
+                    states.put(name, targets.get(name).getStateMirror().snapshot());
+                }
+                client.send("OBS_STATE:" + gson.toJson(states));
+            }
+            return CommandReplies.done();
+        }, CommandPriority.BACKGROUND);
+
+        registry.register("ToggleAllAudio", (client, parameters) ->
+                onTargets(targets, client, "Toggle All Audio", parameters,
+                        (handler, rest) -> handler.toggleAllAudio(), muted -> "muted=" + muted),
+                CommandPriority.EMERGENCY);
+
+        registry.register("ToggleMute", BatchableCommandHandler.of(
+                (client, parameters) -> onTargets(targets, client, "Toggle Mute", parameters,
+                        OBSHandler::toggleMute, muted -> "muted=" + muted),
+                onDefaultTarget(targets, parameters -> CompletableFuture.completedFuture(targets.getDefault().toggleMuteRequest(parameters)))));
+
+        registry.register("Transition", BatchableCommandHandler.of(
+                (client, parameters) -> onTargets(targets, client, "Transition", parameters,
+                        (handler, rest) -> handler.transition(), response -> null),
+                onDefaultTarget(targets, parameters -> CompletableFuture.completedFuture(
+                        BatchedRequest.of(targets.getDefault().transitionRequest())))));
+
+        registry.register("ToggleCamera", BatchableCommandHandler.of(
+                (client, parameters) -> onTargets(targets, client, "Toggle Camera", parameters,
+                        (handler, rest) -> handler.toggleCamera(), response -> null),
+                onDefaultTarget(targets, parameters -> targets.getDefault().toggleSceneItemRequest(Constants.CAMERA_SCENE, Constants.CAMERA_SOURCE))));
+
+        registry.register("ToggleSceneItem", BatchableCommandHandler.of(
+                (client, parameters) -> onTargets(targets, client, "Toggle Scene Item", parameters,
+                        (handler, rest) -> {
+                            int separator = rest.indexOf('|');
+                            if (separator < 0) {
+                                CompletableFuture<Object> failed = new CompletableFuture<>();
+                                failed.completeExceptionally(new IllegalArgumentException("expected <scene>|<source>"));
+                                return failed;
+                            }
+                            return handler.toggleSceneItem(rest.substring(0, separator), rest.substring(separator + 1));
+                        },
+                        response -> null),
+                onDefaultTarget(targets, parameters -> {
+                    int separator = parameters.indexOf('|');
+                    return separator < 0 ? null
+                            : targets.getDefault().toggleSceneItemRequest(parameters.substring(0, separator), parameters.substring(separator + 1));
+                })));
+    }
+
+    /**
+     * Runs the action on every target the parameters name. A single target replies exactly like
+     * {@link CommandReplies#reply}; several reply once all have answered, listing each target's outcome, and the
+     * returned future fails if any of them failed.
+     */
+    private static <T> CompletableFuture<?> onTargets(OBSTargets targets, DeckClient client, String action, String parameters,
+                                                      BiFunction<OBSHandler, String, ? extends CompletableFuture<? extends T>> run,
+                                                      Function<T, String> describe) {
+        OBSTargets.Route route;
+        try {
+            route = targets.route(parameters);
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return reply(client, action, failed, describe);
+        }
+        if (route.isSingle()) {
+            return reply(client, action, start(targets.get(route.getTargets().get(0)), route.getParameters(), run), describe);
+        }
+
+        Map<String, CompletableFuture<T>> results = new LinkedHashMap<>();
+        for (String name : route.getTargets()) {
+            results.put(name, start(targets.get(name), route.getParameters(), run));
+        }
+        // handle() swallows the first failure so the reply waits for every target, not just the fastest to fail.
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> {
+                    List<String> succeeded = new ArrayList<>();
+                    List<String> failed = new ArrayList<>();
+                    for (Map.Entry<String, CompletableFuture<T>> entry : results.entrySet()) {
+                        try {
+                            String detail = describe.apply(entry.getValue().join());
+                            succeeded.add(entry.getKey() + (detail == null ? "" : ": " + detail));
+                        } catch (CompletionException e) {
+                            failed.add(entry.getKey() + ": " + CommandReplies.describeFailure(e));
+                        }
+                    }
+                    if (failed.isEmpty()) {
+                        client.send(action + " executed. (" + String.join("; ", succeeded) + ")");
+                        return CommandReplies.done();
+                    }
+                    String summary = String.join("; ", failed);
+                    client.send(action + " failed: " + summary
+                            + (succeeded.isEmpty() ? "" : " (succeeded: " + String.join("; ", succeeded) + ")"));
+                    return CommandReplies.failedAfterReply(new OBSRequestException(null, summary));
+                });
+    }
+
+    private static <T> CompletableFuture<T> start(OBSHandler handler, String parameters,
+                                                  BiFunction<OBSHandler, String, ? extends CompletableFuture<? extends T>> run) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            run.apply(handler, parameters).whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Macro batches go to the default target only; anything routed elsewhere runs step by step instead.
+     */
+    private static Function<String, CompletableFuture<BatchedRequest>> onDefaultTarget(
+            OBSTargets targets, Function<String, CompletableFuture<BatchedRequest>> toRequest) {
+        return parameters -> {
+            OBSTargets.Route route;
+            try {
+                route = targets.route(parameters);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return route.isSingle() && route.getTargets().get(0).equals(targets.getDefaultName())
+                    ? toRequest.apply(route.getParameters()) : null;
+        };
+    }
+}
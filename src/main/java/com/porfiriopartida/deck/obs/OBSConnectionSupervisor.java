@@ -0,0 +1,363 @@
+package com.porfiriopartida.deck.obs;
+
+import com.porfiriopartida.deck.config.Constants;
+import io.obswebsocket.community.client.OBSRemoteController;
+import io.obswebsocket.community.client.OBSRemoteControllerBuilder;
+import io.obswebsocket.community.client.listener.lifecycle.ReasonThrowable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Owns the websocket to OBS: connects in the background, reconnects with exponential backoff when the socket
+ * drops, probes the connection with a periodic GetVersion, and holds requests issued while disconnected in a
+ * bounded queue until the socket is back (or they expire).
+ */
+public class OBSConnectionSupervisor {
+    private static final Logger logger = LogManager.getLogger(OBSConnectionSupervisor.class);
+
+    public enum State { DISCONNECTED, CONNECTING, CONNECTED, STOPPED }
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final Consumer<OBSRemoteControllerBuilder> customizer;
+    private final ScheduledExecutorService scheduler;
+    private final LinkedList<PendingRequest> pending = new LinkedList<>();
+    private final List<Runnable> readyListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> disconnectListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong reconnectCount = new AtomicLong();
+
+    private volatile OBSRemoteController controller;
+    private volatile State state = State.DISCONNECTED;
+    private volatile long lastLatencyMillis = -1;
+    private int failedAttempts;
+    private ScheduledFuture<?> reconnectTask;
+    private ScheduledFuture<?> heartbeatTask;
+
+    public OBSConnectionSupervisor(String host, int port, String password, Consumer<OBSRemoteControllerBuilder> customizer) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.customizer = customizer;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "obs-supervisor-" + host + ":" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        scheduler.execute(this::attemptConnect);
+        scheduler.scheduleWithFixedDelay(this::expirePending, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        state = State.STOPPED;
+        scheduler.shutdownNow();
+        OBSRemoteController current = controller;
+        if (current != null) {
+            current.stop();
+        }
+        failPending(new OBSRequestException(null, "OBS connection stopped"));
+    }
+
+    /**
+     * Runs the request right away when connected, otherwise queues it for replay after reconnecting.
+     * The future is only used to fail the request if it expires or the queue is full.
+     */
+    public void execute(Consumer<OBSRemoteController> request, CompletableFuture<?> future) {
+        execute(request, future, false);
+    }
+
+    /**
+     * Like {@link #execute(Consumer, CompletableFuture)}; an urgent request is queued behind earlier urgent ones but
+     * ahead of everything else and, when the queue is full, makes room by failing the newest queued request.
+     */
+    public void execute(Consumer<OBSRemoteController> request, CompletableFuture<?> future, boolean urgent) {
+        synchronized (pending) {
+            if (state != State.CONNECTED) {
+                if (state == State.STOPPED) {
+                    future.completeExceptionally(new OBSRequestException(null, "OBS connection stopped"));
+                    return;
+                }
+                if (pending.size() >= Constants.OBS_PENDING_QUEUE_SIZE) {
+                    if (!urgent) {
+                        future.completeExceptionally(new OBSRequestException(null, "OBS disconnected and request queue is full"));
+                        return;
+                    }
+                    pending.pollLast().future.completeExceptionally(
+                            new OBSRequestException(null, "Dropped from the OBS request queue for an urgent request"));
+                }
+                PendingRequest queued = new PendingRequest(request, future,
+                        System.currentTimeMillis() + Constants.OBS_PENDING_EXPIRY, urgent);
+                if (urgent) {
+                    // Two presses of the same urgent toggle must replay in the order they were made.
+                    ListIterator<PendingRequest> position = pending.listIterator();
+                    while (position.hasNext()) {
+                        if (!position.next().urgent) {
+                            position.previous();
+                            break;
+                        }
+                    }
+                    position.add(queued);
+                } else {
+                    pending.add(queued);
+                }
+                return;
+            }
+        }
+        request.accept(controller);
+    }
+
+    public void addReadyListener(Runnable listener) {
+        readyListeners.add(listener);
+    }
+
+    public void addDisconnectListener(Runnable listener) {
+        disconnectListeners.add(listener);
+    }
+
+    public OBSRemoteController getController() {
+        return controller;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private void attemptConnect() {
+        if (state == State.STOPPED) {
+            return;
+        }
+        int attempt = generation.incrementAndGet();
+        OBSRemoteController previous = controller;
+        if (previous != null) {
+            previous.stop();
+        }
+        state = State.CONNECTING;
+        logger.info("Connecting to OBS at {}:{} (attempt {}).", host, port, failedAttempts + 1);
+
+        OBSRemoteControllerBuilder builder = OBSRemoteController.builder()
+                .autoConnect(false)
+                .host(host)
+                .port(port)
+                .password(password)
+                .connectionTimeout((int) (Constants.OBS_CONNECT_TIMEOUT / 1000));
+        customizer.accept(builder);
+        controller = builder.lifecycle()
+                .withCommunicatorDefaultLogging(false)
+                .withControllerDefaultLogging(false)
+                .onReady(() -> onScheduler(() -> onReady(attempt)))
+                .onDisconnect(() -> onScheduler(() -> onConnectionLost(attempt, "disconnected")))
+                .onCommunicatorError(reason -> onScheduler(() -> onError(attempt, reason)))
+                .onControllerError(reason -> onScheduler(() -> onError(attempt, reason)))
+                .and()
+                .build();
+
+        // Blocks for at most the connection timeout; failures arrive through the lifecycle callbacks.
+        controller.connect();
+        scheduler.schedule(() -> {
+            if (generation.get() == attempt && state == State.CONNECTING) {
+                onConnectionLost(attempt, "handshake timed out");
+            }
+        }, Constants.OBS_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands a lifecycle callback to the supervisor thread; callbacks arriving after {@link #stop()} are dropped.
+     */
+    private void onScheduler(Runnable task) {
+        if (state == State.STOPPED) {
+            return;
+        }
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Ignoring OBS lifecycle callback after shutdown.");
+        }
+    }
+
+    private void onReady(int attempt) {
+        if (attempt != generation.get() || state == State.STOPPED) {
+            return;
+        }
+        logger.info("Connected to OBS at {}:{}.", host, port);
+        failedAttempts = 0;
+        // Requests keep queueing until the replay has caught up, so none can overtake an earlier queued one.
+        int replayed = 0;
+        while (true) {
+            Deque<PendingRequest> replay;
+            synchronized (pending) {
+                if (attempt != generation.get() || state != State.CONNECTING) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    state = State.CONNECTED;
+                    break;
+                }
+                replay = new ArrayDeque<>(pending);
+                pending.clear();
+            }
+            long now = System.currentTimeMillis();
+            for (PendingRequest request : replay) {
+                if (request.future.isDone()) {
+                    continue;
+                }
+                if (request.expiresAt < now) {
+                    request.future.completeExceptionally(new TimeoutException("OBS was unavailable"));
+                    continue;
+                }
+                request.action.accept(controller);
+                replayed++;
+            }
+        }
+        if (replayed > 0) {
+            logger.info("Replayed {} queued OBS request(s).", replayed);
+        }
+        for (Runnable listener : readyListeners) {
+            listener.run();
+        }
+        heartbeatTask = scheduler.scheduleWithFixedDelay(() -> heartbeat(attempt),
+                Constants.OBS_HEARTBEAT_INTERVAL, Constants.OBS_HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void onError(int attempt, ReasonThrowable reason) {
+        if (state == State.CONNECTING) {
+            onConnectionLost(attempt, describe(reason));
+        } else {
+            // While connected, a real drop is reported through onDisconnect.
+            logger.warn("OBS error: {}", describe(reason));
+        }
+    }
+
+    private void onConnectionLost(int attempt, String reason) {
+        if (attempt != generation.get() || state == State.STOPPED || state == State.DISCONNECTED) {
+            return;
+        }
+        boolean wasConnected = state == State.CONNECTED;
+        state = State.DISCONNECTED;
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+        if (wasConnected) {
+            logger.warn("Lost connection to OBS: {}", reason);
+            for (Runnable listener : disconnectListeners) {
+                listener.run();
+            }
+        } else {
+            logger.warn("Could not connect to OBS: {}", reason);
+        }
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (reconnectTask != null && !reconnectTask.isDone()) {
+            return;
+        }
+        long backoff = Math.min(Constants.OBS_RECONNECT_MAX_DELAY,
+                Constants.OBS_RECONNECT_BASE_DELAY << Math.min(failedAttempts, 16));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        failedAttempts++;
+        reconnectCount.incrementAndGet();
+        logger.info("Reconnecting to OBS in {}ms.", delay);
+        reconnectTask = scheduler.schedule(this::attemptConnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void heartbeat(int attempt) {
+        OBSRemoteController current = controller;
+        if (state != State.CONNECTED || current == null) {
+            return;
+        }
+        long sentAt = System.nanoTime();
+        CompletableFuture<Void> reply = new CompletableFuture<>();
+        current.getVersion(response -> {
+            lastLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentAt);
+            reply.complete(null);
+        });
+        scheduler.schedule(() -> {
+            if (!reply.isDone()) {
+                logger.warn("OBS heartbeat got no reply in {}ms, reconnecting.", Constants.OBS_HEARTBEAT_TIMEOUT);
+                onConnectionLost(attempt, "heartbeat timeout");
+            }
+        }, Constants.OBS_HEARTBEAT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void expirePending() {
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            pending.removeIf(request -> {
+                if (request.future.isDone()) {
+                    return true;
+                }
+                if (request.expiresAt < now) {
+                    request.future.completeExceptionally(new TimeoutException("OBS was unavailable"));
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private void failPending(Throwable error) {
+        synchronized (pending) {
+            for (PendingRequest request : pending) {
+                request.future.completeExceptionally(error);
+            }
+            pending.clear();
+        }
+    }
+
+    private static String describe(ReasonThrowable reason) {
+        if (reason == null) {
+            return "unknown error";
+        }
+        return reason.getThrowable() != null && reason.getThrowable().getMessage() != null
+                ? reason.getReason() + " (" + reason.getThrowable().getMessage() + ")"
+                : reason.getReason();
+    }
+
+    private static class PendingRequest {
+        private final Consumer<OBSRemoteController> action;
+        private final CompletableFuture<?> future;
+        private final long expiresAt;
+        private final boolean urgent;
+
+        private PendingRequest(Consumer<OBSRemoteController> action, CompletableFuture<?> future, long expiresAt,
+                               boolean urgent) {
+            this.action = action;
+            this.future = future;
+            this.expiresAt = expiresAt;
+            this.urgent = urgent;
+        }
+    }
+}
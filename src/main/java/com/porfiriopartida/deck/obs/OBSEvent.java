@@ -0,0 +1,125 @@
+package com.porfiriopartida.deck.obs;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A state change reported by OBS, reduced to what deck clients need to keep their buttons in sync.
+ * Events with the same {@link #getKey() key} describe the same piece of state, so only the newest one matters.
+ */
+public class OBSEvent {
+    public static final String INPUT_MUTE_STATE_CHANGED = "InputMuteStateChanged";
+    public static final String CURRENT_PROGRAM_SCENE_CHANGED = "CurrentProgramSceneChanged";
+    public static final String CURRENT_PREVIEW_SCENE_CHANGED = "CurrentPreviewSceneChanged";
+    public static final String SCENE_ITEM_ENABLE_STATE_CHANGED = "SceneItemEnableStateChanged";
+    public static final String STUDIO_MODE_STATE_CHANGED = "StudioModeStateChanged";
+    public static final String SCENE_TRANSITION_STARTED = "SceneTransitionStarted";
+    public static final String SCENE_TRANSITION_ENDED = "SceneTransitionEnded";
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final transient String key;
+    private final String type;
+    private final long seq;
+    private final long time;
+    private final Map<String, Object> data;
+    // Only set when several OBS instances are configured; left out of the JSON otherwise.
+    private final String target;
+
+    private OBSEvent(String type, String key, Map<String, Object> data) {
+        this.type = type;
+        this.key = key;
+        this.seq = sequence.incrementAndGet();
+        this.time = System.currentTimeMillis();
+        this.data = Collections.unmodifiableMap(data);
+        this.target = null;
+    }
+
+    private OBSEvent(OBSEvent event, String target) {
+        this.type = event.type;
+        this.key = event.key;
+        this.seq = event.seq;
+        this.time = event.time;
+        this.data = event.data;
+        this.target = target;
+    }
+
+    /**
+     * The same event attributed to a named OBS target. The key stays the same; consumers that coalesce must also
+     * compare {@link #getTarget()} so changes on different instances aren't merged.
+     */
+    public OBSEvent withTarget(String target) {
+        return new OBSEvent(this, target);
+    }
+
+    public static OBSEvent inputMuteStateChanged(String inputName, boolean muted) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("inputName", inputName);
+        data.put("inputMuted", muted);
+        return new OBSEvent(INPUT_MUTE_STATE_CHANGED, INPUT_MUTE_STATE_CHANGED + ":" + inputName, data);
+    }
+
+    public static OBSEvent programSceneChanged(String sceneName) {
+        return new OBSEvent(CURRENT_PROGRAM_SCENE_CHANGED, CURRENT_PROGRAM_SCENE_CHANGED, Collections.<String, Object>singletonMap("sceneName", sceneName));
+    }
+
+    public static OBSEvent previewSceneChanged(String sceneName) {
+        return new OBSEvent(CURRENT_PREVIEW_SCENE_CHANGED, CURRENT_PREVIEW_SCENE_CHANGED, Collections.<String, Object>singletonMap("sceneName", sceneName));
+    }
+
+    public static OBSEvent sceneItemEnableStateChanged(String sceneName, int sceneItemId, boolean enabled) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("sceneName", sceneName);
+        data.put("sceneItemId", sceneItemId);
+        data.put("sceneItemEnabled", enabled);
+        return new OBSEvent(SCENE_ITEM_ENABLE_STATE_CHANGED, SCENE_ITEM_ENABLE_STATE_CHANGED + ":" + sceneName + ":" + sceneItemId, data);
+    }
+
+    public static OBSEvent studioModeStateChanged(boolean enabled) {
+        return new OBSEvent(STUDIO_MODE_STATE_CHANGED, STUDIO_MODE_STATE_CHANGED, Collections.<String, Object>singletonMap("studioModeEnabled", enabled));
+    }
+
+    /**
+     * Transition start and end share a key: a client that falls behind only needs to know where the transition is now.
+     */
+    public static OBSEvent sceneTransition(String type, String transitionName) {
+        return new OBSEvent(type, "SceneTransition", Collections.<String, Object>singletonMap("transitionName", transitionName));
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The event type plus the input, scene or item it is about, e.g. {@code InputMuteStateChanged:Mic}.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Increases with every event, so a receiver can tell which of two updates is newer.
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return (target == null ? "" : target + "@") + key + " " + data;
+    }
+}
@@ -0,0 +1,6 @@
+package com.porfiriopartida.deck.obs;
+
+@FunctionalInterface
+public interface OBSEventListener {
+    void onEvent(OBSEvent event);
+}
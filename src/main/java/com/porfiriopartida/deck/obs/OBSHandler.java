@@ -1,50 +1,421 @@
 package com.porfiriopartida.deck.obs;
 
 import com.porfiriopartida.exception.ConfigurationValidationException;
+import com.porfiriopartida.deck.command.BatchedRequest;
 import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.metrics.LatencyHistogram;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
 import io.obswebsocket.community.client.OBSRemoteController;
+import io.obswebsocket.community.client.OBSRemoteControllerBuilder;
+import io.obswebsocket.community.client.message.event.inputs.InputCreatedEvent;
+import io.obswebsocket.community.client.message.event.inputs.InputMuteStateChangedEvent;
+import io.obswebsocket.community.client.message.event.inputs.InputNameChangedEvent;
+import io.obswebsocket.community.client.message.event.inputs.InputRemovedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemCreatedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemEnableStateChangedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemRemovedEvent;
+import io.obswebsocket.community.client.message.event.scenes.CurrentPreviewSceneChangedEvent;
+import io.obswebsocket.community.client.message.event.scenes.CurrentProgramSceneChangedEvent;
+import io.obswebsocket.community.client.message.event.scenes.SceneCreatedEvent;
+import io.obswebsocket.community.client.message.event.scenes.SceneNameChangedEvent;
+import io.obswebsocket.community.client.message.event.scenes.SceneRemovedEvent;
+import io.obswebsocket.community.client.message.event.transitions.SceneTransitionEndedEvent;
+import io.obswebsocket.community.client.message.event.transitions.SceneTransitionStartedEvent;
+import io.obswebsocket.community.client.message.event.ui.StudioModeStateChangedEvent;
+import io.obswebsocket.community.client.message.request.Request;
+import io.obswebsocket.community.client.message.request.RequestBatch;
+import io.obswebsocket.community.client.message.request.RequestType;
+import io.obswebsocket.community.client.message.request.inputs.SetInputMuteRequest;
+import io.obswebsocket.community.client.message.request.inputs.ToggleInputMuteRequest;
+import io.obswebsocket.community.client.message.request.sceneitems.SetSceneItemEnabledRequest;
+import io.obswebsocket.community.client.message.request.transitions.TriggerStudioModeTransitionRequest;
+import io.obswebsocket.community.client.message.response.RequestBatchResponse;
+import io.obswebsocket.community.client.message.response.RequestResponse;
+import io.obswebsocket.community.client.message.response.inputs.SetInputMuteResponse;
+import io.obswebsocket.community.client.message.response.inputs.ToggleInputMuteResponse;
 import io.obswebsocket.community.client.message.response.sceneitems.GetSceneItemEnabledResponse;
 import io.obswebsocket.community.client.message.response.sceneitems.GetSceneItemIdResponse;
+import io.obswebsocket.community.client.message.response.sceneitems.SetSceneItemEnabledResponse;
+import io.obswebsocket.community.client.message.response.transitions.TriggerStudioModeTransitionResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+/**
+ * Requests are sent through the callback API of {@link OBSRemoteController}, so any number of them can be in flight
+ * over the single websocket; each call returns a future completed from the OBS reply (or failed on timeout).
+ * <p>
+ * Each request records how long it waited for the connection and its round trip, labelled by request type.
+ */
 public class OBSHandler {
-    private OBSRemoteController controller;
+    private static final Logger logger = LogManager.getLogger(OBSHandler.class);
+    public static final String METRIC_QUEUE_WAIT = "obsdeck_obs_queue_wait_seconds";
+    public static final String METRIC_REQUEST_LATENCY = "obsdeck_obs_request_latency_seconds";
+    public static final String METRIC_REQUEST_FAILURES = "obsdeck_obs_request_failures_total";
+    public static final String METRIC_REQUEST_TIMEOUTS = "obsdeck_obs_request_timeouts_total";
+    private static final String BATCH_REQUEST_TYPE = "RequestBatch";
+    private final SceneItemCache sceneItemCache = new SceneItemCache();
+    private final List<OBSEventListener> eventListeners = new CopyOnWriteArrayList<>();
+    private final OBSStateMirror stateMirror;
+    private final OBSConnectionSupervisor supervisor;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final LatencyHistogram queueWait = metrics.histogram(METRIC_QUEUE_WAIT);
+    private final LongAdder timeouts = metrics.counter(METRIC_REQUEST_TIMEOUTS);
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "obs-request-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public OBSRemoteController getController(){ return controller; }
+    public OBSHandler() {
+        this(Constants.LOCALHOST, Constants.OBS_PORT, Constants.OBS_PASSWORD);
+    }
+
+    public OBSHandler(String host, int port, String password) {
+        supervisor = new OBSConnectionSupervisor(host, port, password, this::registerEventListeners);
+        stateMirror = new OBSStateMirror(this, sceneItemCache);
+        addEventListener(stateMirror);
+        supervisor.addDisconnectListener(sceneItemCache::clear);
+        supervisor.addDisconnectListener(stateMirror::clear);
+        supervisor.addReadyListener(stateMirror::bootstrap);
+        metrics.describe(METRIC_QUEUE_WAIT, "Time a request waited for the OBS connection before being sent.");
+        metrics.describe(METRIC_REQUEST_LATENCY, "OBS round trip from sending a request to its reply.");
+    }
+
+    public OBSRemoteController getController(){ return supervisor.getController(); }
 
+    public OBSConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    public OBSStateMirror getStateMirror() {
+        return stateMirror;
+    }
+
+    /**
+     * Starts connecting in the background; requests issued before OBS is up are queued and replayed.
+     */
     public void connect() throws IOException, ConfigurationValidationException {
-        try {
-            controller = OBSRemoteController.builder()
-                    .autoConnect(false)
-                    .host(Constants.LOCALHOST)
-                    .port(Constants.OBS_PORT)
-                    .password(Constants.OBS_PASSWORD)
-                    .build();
-            controller.connect();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+        supervisor.start();
+    }
+
+    public void disconnect() {
+        supervisor.stop();
+    }
+
+    /**
+     * Receives the state changes OBS reports (mutes, scene switches, item visibility, studio mode, transitions).
+     * Listeners are called on the websocket thread and must not block.
+     */
+    public void addEventListener(OBSEventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    public void removeEventListener(OBSEventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    // The library keeps one consumer per event class, so each class gets a single lambda doing all the work.
+    private void registerEventListeners(OBSRemoteControllerBuilder builder) {
+        builder.registerEventListener(SceneItemCreatedEvent.class, event -> {
+                    sceneItemCache.onSceneItemCreated(event);
+                    stateMirror.onSceneItemCreated(event.getSceneName(), event.getSourceName(), event.getSceneItemId().intValue());
+                })
+                .registerEventListener(SceneItemRemovedEvent.class, event -> {
+                    sceneItemCache.onSceneItemRemoved(event);
+                    stateMirror.onSceneItemRemoved(event.getSceneName(), event.getSceneItemId().intValue());
+                })
+                .registerEventListener(SceneItemEnableStateChangedEvent.class, event -> {
+                    sceneItemCache.onSceneItemEnableStateChanged(event);
+                    publish(OBSEvent.sceneItemEnableStateChanged(event.getSceneName(),
+                            event.getSceneItemId().intValue(), Boolean.TRUE.equals(event.getSceneItemEnabled())));
+                })
+                .registerEventListener(SceneCreatedEvent.class, event -> stateMirror.onSceneCreated(event.getSceneName()))
+                .registerEventListener(SceneRemovedEvent.class, event -> {
+                    sceneItemCache.onSceneRemoved(event);
+                    stateMirror.onSceneRemoved(event.getSceneName());
+                })
+                .registerEventListener(SceneNameChangedEvent.class, event -> {
+                    sceneItemCache.onSceneNameChanged(event);
+                    stateMirror.onSceneNameChanged(event.getOldSceneName(), event.getSceneName());
+                })
+                .registerEventListener(InputCreatedEvent.class, event -> stateMirror.onInputCreated(event.getInputName(), event.getInputKind()))
+                .registerEventListener(InputRemovedEvent.class, event -> stateMirror.onInputRemoved(event.getInputName()))
+                .registerEventListener(InputNameChangedEvent.class, event -> {
+                    sceneItemCache.onInputNameChanged(event);
+                    stateMirror.onInputNameChanged(event.getOldInputName(), event.getInputName());
+                })
+                .registerEventListener(InputMuteStateChangedEvent.class, event ->
+                        publish(OBSEvent.inputMuteStateChanged(event.getInputName(), Boolean.TRUE.equals(event.getInputMuted()))))
+                .registerEventListener(CurrentProgramSceneChangedEvent.class, event ->
+                        publish(OBSEvent.programSceneChanged(event.getSceneName())))
+                .registerEventListener(CurrentPreviewSceneChangedEvent.class, event ->
+                        publish(OBSEvent.previewSceneChanged(event.getSceneName())))
+                .registerEventListener(StudioModeStateChangedEvent.class, event ->
+                        publish(OBSEvent.studioModeStateChanged(Boolean.TRUE.equals(event.getStudioModeEnabled()))))
+                .registerEventListener(SceneTransitionStartedEvent.class, event ->
+                        publish(OBSEvent.sceneTransition(OBSEvent.SCENE_TRANSITION_STARTED, event.getTransitionName())))
+                .registerEventListener(SceneTransitionEndedEvent.class, event ->
+                        publish(OBSEvent.sceneTransition(OBSEvent.SCENE_TRANSITION_ENDED, event.getTransitionName())));
+    }
+
+    private void publish(OBSEvent event) {
+        for (OBSEventListener listener : eventListeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                logger.error("OBS event listener failed for {}.", event, e);
+            }
         }
     }
 
-    public void toggleMute(String parameter) {
-        controller.toggleInputMute(parameter, 1000l);
+    /**
+     * Flips an input's mute and completes with the new state. When the mirror knows the current state this sends
+     * the target state (SetInputMute), so quick repeated presses alternate instead of racing each other.
+     */
+    public CompletableFuture<Boolean> toggleMute(String inputName) {
+        Boolean muted = stateMirror.getInputMuted(inputName);
+        if (muted == null) {
+            return this.<ToggleInputMuteResponse>submit((obs, callback) -> obs.toggleInputMute(inputName, callback))
+                    .thenApply(ToggleInputMuteResponse::getInputMuted);
+        }
+        boolean target = !muted;
+        stateMirror.putInputMuted(inputName, target);
+        return this.<SetInputMuteResponse>submit((obs, callback) -> obs.setInputMute(inputName, target, callback))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        stateMirror.putInputMuted(inputName, null);
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                    }
+                    return target;
+                });
     }
 
-    public void transition() {
-        controller.triggerStudioModeTransition(1000l);
+    public CompletableFuture<TriggerStudioModeTransitionResponse> transition() {
+        return submit((obs, callback) -> obs.triggerStudioModeTransition(callback));
     }
 
-    public void toggleCamera() {
-        String sceneName = "_Generic_1_AudioAlertsCamera__";
-        String cameraScene = "_CameraScene";
-        GetSceneItemIdResponse idResponse = controller.getSceneItemId(sceneName, cameraScene, 0, Constants.DEFAULT_TIMEOUT);
-        GetSceneItemEnabledResponse response = controller.getSceneItemEnabled(sceneName, idResponse.getSceneItemId(), Constants.DEFAULT_TIMEOUT);
-        boolean lastVal = response.getSceneItemEnabled();
-        controller.setSceneItemEnabled(sceneName, idResponse.getSceneItemId(), !lastVal, Constants.DEFAULT_TIMEOUT);
+    public CompletableFuture<SetSceneItemEnabledResponse> toggleCamera() {
+        return toggleSceneItem(Constants.CAMERA_SCENE, Constants.CAMERA_SOURCE);
+    }
+
+    /**
+     * Flips a scene item's visibility. With the id and state cached this is a single SetSceneItemEnabled request.
+     */
+    public CompletableFuture<SetSceneItemEnabledResponse> toggleSceneItem(String sceneName, String sourceName) {
+        return resolveSceneItemId(sceneName, sourceName)
+                .thenCompose(sceneItemId -> resolveSceneItemEnabled(sceneName, sceneItemId)
+                        .thenCompose(enabled -> setSceneItemEnabled(sceneName, sourceName, sceneItemId, !enabled)));
+    }
+
+    public CompletableFuture<SetSceneItemEnabledResponse> setSceneItemEnabled(String sceneName, String sourceName, int sceneItemId, boolean enabled) {
+        // Record the target state up front so a second press arriving before the reply toggles back.
+        sceneItemCache.putSceneItemEnabled(sceneName, sceneItemId, enabled);
+        CompletableFuture<SetSceneItemEnabledResponse> request =
+                submit((obs, callback) -> obs.setSceneItemEnabled(sceneName, sceneItemId, enabled, callback));
+        return request.whenComplete((response, error) -> {
+            if (error != null) {
+                sceneItemCache.invalidateSceneItem(sceneName, sourceName, sceneItemId);
+            }
+        });
+    }
+
+    /**
+     * Batch counterpart of {@link #toggleMute(String)}; the mirror records the new state only once the batch is sent.
+     */
+    public BatchedRequest toggleMuteRequest(String inputName) {
+        Boolean muted = stateMirror.getInputMuted(inputName);
+        if (muted == null) {
+            return BatchedRequest.of(ToggleInputMuteRequest.builder().inputName(inputName).build());
+        }
+        boolean target = !muted;
+        return BatchedRequest.of(SetInputMuteRequest.builder().inputName(inputName).inputMuted(target).build(),
+                () -> stateMirror.putInputMuted(inputName, target),
+                () -> stateMirror.putInputMuted(inputName, null));
+    }
+
+    public Request<?> transitionRequest() {
+        return TriggerStudioModeTransitionRequest.builder().build();
+    }
+
+    /**
+     * Builds the single write a toggle needs inside a batch, resolving the id/state first if they are not cached yet.
+     * The cache only records the new state once the batch is sent, see {@link BatchedRequest}.
+     */
+    public CompletableFuture<BatchedRequest> toggleSceneItemRequest(String sceneName, String sourceName) {
+        return resolveSceneItemId(sceneName, sourceName)
+                .thenCompose(sceneItemId -> resolveSceneItemEnabled(sceneName, sceneItemId)
+                        .thenApply(enabled -> BatchedRequest.of(
+                                SetSceneItemEnabledRequest.builder()
+                                        .sceneName(sceneName)
+                                        .sceneItemId(sceneItemId)
+                                        .sceneItemEnabled(!enabled)
+                                        .build(),
+                                () -> sceneItemCache.putSceneItemEnabled(sceneName, sceneItemId, !enabled),
+                                () -> sceneItemCache.invalidateSceneItem(sceneName, sourceName, sceneItemId))));
+    }
+
+    /**
+     * Sends all requests as one obs-websocket RequestBatch, executed serially in real time.
+     * Results come back in request order.
+     */
+    public CompletableFuture<List<RequestResponse.Data<?>>> sendBatch(List<Request<?>> requests, long timeoutMillis) {
+        return sendBatch(requests, timeoutMillis, false);
+    }
+
+    /**
+     * Like {@link #sendBatch(List, long)}; an urgent batch jumps the queue of requests waiting for a reconnect.
+     */
+    public CompletableFuture<List<RequestResponse.Data<?>>> sendBatch(List<Request<?>> requests, long timeoutMillis, boolean urgent) {
+        RequestBatch batch = RequestBatch.builder()
+                .haltOnFailure(false)
+                .executionType(RequestBatch.RequestBatchExecutionType.SerialRealtime)
+                .requests(requests)
+                .build();
+        CompletableFuture<List<RequestResponse.Data<?>>> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        supervisor.execute(obs -> {
+            long sentAt = System.nanoTime();
+            queueWait.record(sentAt - queuedAt);
+            ScheduledFuture<?> timeout = scheduleTimeout(future, timeoutMillis);
+            try {
+                obs.sendRequestBatch(batch, response -> {
+                    timeout.cancel(false);
+                    recordRoundTrip(BATCH_REQUEST_TYPE, sentAt, true);
+                    // The library hands back raw Data; widen each element once here instead of leaking the raw type.
+                    List<RequestResponse.Data<?>> results = new ArrayList<>(response.getData().getResults().size());
+                    for (RequestResponse.Data<?> result : response.getData().getResults()) {
+                        results.add(result);
+                        if (!Boolean.TRUE.equals(result.getRequestStatus().getResult())
+                                && result.getRequestType() == RequestType.SetSceneItemEnabled) {
+                            // The optimistic state recorded while compiling is now unknown.
+                            sceneItemCache.clear();
+                        } else if (!Boolean.TRUE.equals(result.getRequestStatus().getResult())
+                                && result.getRequestType() == RequestType.SetInputMute) {
+                            stateMirror.forgetInputMuteStates();
+                        }
+                    }
+                    future.complete(results);
+                });
+            } catch (RuntimeException e) {
+                timeout.cancel(false);
+                future.completeExceptionally(e);
+            }
+        }, future, urgent);
+        return future;
+    }
+
+    public SceneItemCache getSceneItemCache() {
+        return sceneItemCache;
+    }
+
+    private CompletableFuture<Integer> resolveSceneItemId(String sceneName, String sourceName) {
+        Integer cached = sceneItemCache.getSceneItemId(sceneName, sourceName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return this.<GetSceneItemIdResponse>submit((obs, callback) -> obs.getSceneItemId(sceneName, sourceName, 0, callback))
+                .thenApply(response -> {
+                    sceneItemCache.putSceneItemId(sceneName, sourceName, response.getSceneItemId());
+                    return response.getSceneItemId().intValue();
+                });
+    }
+
+    private CompletableFuture<Boolean> resolveSceneItemEnabled(String sceneName, int sceneItemId) {
+        Boolean cached = sceneItemCache.getSceneItemEnabled(sceneName, sceneItemId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return this.<GetSceneItemEnabledResponse>submit((obs, callback) -> obs.getSceneItemEnabled(sceneName, sceneItemId, callback))
+                .thenApply(response -> {
+                    sceneItemCache.putSceneItemEnabled(sceneName, sceneItemId, response.getSceneItemEnabled());
+                    return response.getSceneItemEnabled();
+                });
+    }
+
+    /**
+     * Mutes every audio input when any of them is live, otherwise unmutes them all. Sent as one batch that goes
+     * ahead of anything waiting for the connection; completes with the new state (true when muted). While OBS is
+     * reconnecting it uses the inputs known before the drop, so the batch is queued rather than refused.
+     */
+    public CompletableFuture<Boolean> toggleAllAudio() {
+        Map<String, Boolean> inputs = stateMirror.getLastKnownInputMuteStates();
+        if (inputs.isEmpty()) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new OBSRequestException(null, "No audio inputs known yet"));
+            return failed;
+        }
+        boolean target = inputs.containsValue(Boolean.FALSE);
+        List<Request<?>> requests = new ArrayList<>(inputs.size());
+        for (String inputName : inputs.keySet()) {
+            stateMirror.putInputMuted(inputName, target);
+            requests.add(SetInputMuteRequest.builder().inputName(inputName).inputMuted(target).build());
+        }
+        return sendBatch(requests, Constants.DEFAULT_TIMEOUT, true).thenApply(results -> {
+            int failures = 0;
+            for (RequestResponse.Data<?> result : results) {
+                if (!Boolean.TRUE.equals(result.getRequestStatus().getResult())) {
+                    failures++;
+                }
+            }
+            if (failures > 0) {
+                throw new OBSRequestException(null, failures + " of " + results.size() + " inputs failed");
+            }
+            return target;
+        });
+    }
+
+    /**
+     * Sends a request through the supervisor; the reply timeout starts when the request actually goes out,
+     * not while it waits in the reconnect queue.
+     */
+    <T extends RequestResponse<?>> CompletableFuture<T> submit(BiConsumer<OBSRemoteController, Consumer<T>> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        supervisor.execute(obs -> {
+            long sentAt = System.nanoTime();
+            queueWait.record(sentAt - queuedAt);
+            ScheduledFuture<?> timeout = scheduleTimeout(future, Constants.DEFAULT_TIMEOUT);
+            try {
+                request.accept(obs, response -> {
+                    timeout.cancel(false);
+                    RequestType requestType = response.getMessageData().getRequestType();
+                    recordRoundTrip(requestType == null ? "Unknown" : requestType.name(), sentAt, response.isSuccessful());
+                    if (response.isSuccessful()) {
+                        future.complete(response);
+                    } else {
+                        RequestResponse.Status status = response.getMessageData().getRequestStatus();
+                        future.completeExceptionally(new OBSRequestException(status.getCode(), status.getComment()));
+                    }
+                });
+            } catch (RuntimeException e) {
+                timeout.cancel(false);
+                future.completeExceptionally(e);
+            }
+        }, future);
+        return future;
+    }
+
+    private void recordRoundTrip(String requestType, long sentAt, boolean successful) {
+        metrics.histogram(METRIC_REQUEST_LATENCY, "request", requestType).record(System.nanoTime() - sentAt);
+        if (!successful) {
+            metrics.counter(METRIC_REQUEST_FAILURES, "request", requestType).increment();
+        }
     }
-    public void toggleAllAudio(){
 
+    private ScheduledFuture<?> scheduleTimeout(CompletableFuture<?> future, long timeoutMillis) {
+        return timeoutScheduler.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException("No reply from OBS after " + timeoutMillis + "ms"))) {
+                timeouts.increment();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
     }
 }
@@ -0,0 +1,19 @@
+package com.porfiriopartida.deck.obs;
+
+/**
+ * Raised when OBS answers a request with a failed status.
+ */
+public class OBSRequestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Integer code;
+
+    public OBSRequestException(Integer code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,405 @@
+package com.porfiriopartida.deck.obs;
+
+import io.obswebsocket.community.client.message.response.inputs.GetInputListResponse;
+import io.obswebsocket.community.client.message.response.inputs.GetInputMuteResponse;
+import io.obswebsocket.community.client.message.response.sceneitems.GetSceneItemEnabledResponse;
+import io.obswebsocket.community.client.message.response.sceneitems.GetSceneItemListResponse;
+import io.obswebsocket.community.client.message.response.scenes.GetSceneListResponse;
+import io.obswebsocket.community.client.message.response.ui.GetStudioModeEnabledResponse;
+import io.obswebsocket.community.client.model.Input;
+import io.obswebsocket.community.client.model.Scene;
+import io.obswebsocket.community.client.model.SceneItem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A local copy of the OBS state deck buttons care about: scenes and their items, inputs, mute and visibility,
+ * the program/preview scene and studio mode. It is read once when the connection comes up and then kept current
+ * by OBS events, so clients can render from it without asking OBS.
+ * <p>
+ * Values that an event already set are never overwritten by the (older) bootstrap reply that arrives after it.
+ */
+public class OBSStateMirror implements OBSEventListener {
+    private static final Logger logger = LogManager.getLogger(OBSStateMirror.class);
+
+    private final OBSHandler handler;
+    private final SceneItemCache sceneItemCache;
+    private final Map<String, SceneState> scenes = new HashMap<>();
+    private final Map<String, InputState> inputs = new TreeMap<>();
+    // Survives clear() so mute-all still knows what to mute while OBS is reconnecting.
+    private Map<String, Boolean> lastInputMuteStates = Collections.emptyMap();
+    private String currentProgramScene;
+    private String currentPreviewScene;
+    private Boolean studioModeEnabled;
+    private boolean synced;
+    private int epoch;
+
+    OBSStateMirror(OBSHandler handler, SceneItemCache sceneItemCache) {
+        this.handler = handler;
+        this.sceneItemCache = sceneItemCache;
+    }
+
+    /**
+     * Reads the full state from OBS; called every time the connection becomes ready.
+     */
+    void bootstrap() {
+        int bootstrapEpoch;
+        synchronized (this) {
+            bootstrapEpoch = epoch;
+        }
+        CompletableFuture<Void> scenesLoaded = handler.<GetSceneListResponse>submit((obs, callback) -> obs.getSceneList(callback))
+                .thenCompose(response -> {
+                    List<CompletableFuture<?>> items = new ArrayList<>();
+                    synchronized (this) {
+                        if (bootstrapEpoch != epoch) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        if (currentProgramScene == null) {
+                            currentProgramScene = response.getCurrentProgramSceneName();
+                        }
+                        if (currentPreviewScene == null) {
+                            currentPreviewScene = response.getCurrentPreviewSceneName();
+                        }
+                        for (Scene scene : response.getScenes()) {
+                            scenes.computeIfAbsent(scene.getSceneName(), SceneState::new).index = scene.getSceneIndex();
+                        }
+                    }
+                    for (Scene scene : response.getScenes()) {
+                        items.add(loadSceneItems(bootstrapEpoch, scene.getSceneName()));
+                    }
+                    return CompletableFuture.allOf(items.toArray(new CompletableFuture<?>[0]));
+                });
+
+        CompletableFuture<Void> inputsLoaded = handler.<GetInputListResponse>submit((obs, callback) -> obs.getInputList(null, callback))
+                .thenCompose(response -> {
+                    List<CompletableFuture<?>> mutes = new ArrayList<>();
+                    for (Input input : response.getInputs()) {
+                        synchronized (this) {
+                            if (bootstrapEpoch != epoch) {
+                                break;
+                            }
+                            inputs.computeIfAbsent(input.getInputName(), InputState::new).inputKind = input.getInputKind();
+                        }
+                        mutes.add(loadInputMute(bootstrapEpoch, input.getInputName()));
+                    }
+                    return CompletableFuture.allOf(mutes.toArray(new CompletableFuture<?>[0]));
+                });
+
+        CompletableFuture<Void> studioModeLoaded = handler.<GetStudioModeEnabledResponse>submit((obs, callback) -> obs.getStudioModeEnabled(callback))
+                .thenAccept(response -> {
+                    synchronized (this) {
+                        if (bootstrapEpoch == epoch && studioModeEnabled == null) {
+                            studioModeEnabled = response.getStudioModeEnabled();
+                        }
+                    }
+                });
+
+        CompletableFuture.allOf(scenesLoaded, inputsLoaded, studioModeLoaded).whenComplete((ignored, error) -> {
+            synchronized (this) {
+                if (bootstrapEpoch != epoch) {
+                    return;
+                }
+                if (error != null) {
+                    logger.warn("Mirroring OBS state failed, it will fill in from events: {}", error.getMessage());
+                    return;
+                }
+                synced = true;
+                logger.info("Mirrored OBS state: {} scene(s), {} input(s).", scenes.size(), inputs.size());
+            }
+        });
+    }
+
+    private CompletableFuture<?> loadSceneItems(int bootstrapEpoch, String sceneName) {
+        return handler.<GetSceneItemListResponse>submit((obs, callback) -> obs.getSceneItemList(sceneName, callback))
+                .thenCompose(response -> {
+                    List<CompletableFuture<?>> states = new ArrayList<>();
+                    for (SceneItem item : response.getSceneItems()) {
+                        if (!addSceneItem(bootstrapEpoch, sceneName, item.getSourceName(), item.getSceneItemId())) {
+                            break;
+                        }
+                        states.add(loadSceneItemEnabled(bootstrapEpoch, sceneName, item.getSceneItemId()));
+                    }
+                    return CompletableFuture.allOf(states.toArray(new CompletableFuture<?>[0]));
+                });
+    }
+
+    private CompletableFuture<?> loadSceneItemEnabled(int bootstrapEpoch, String sceneName, int sceneItemId) {
+        return handler.<GetSceneItemEnabledResponse>submit((obs, callback) -> obs.getSceneItemEnabled(sceneName, sceneItemId, callback))
+                .thenAccept(response -> {
+                    synchronized (this) {
+                        SceneItemState item = findItem(sceneName, sceneItemId);
+                        if (bootstrapEpoch == epoch && item != null && item.sceneItemEnabled == null) {
+                            item.sceneItemEnabled = response.getSceneItemEnabled();
+                            sceneItemCache.putSceneItemEnabled(sceneName, sceneItemId, response.getSceneItemEnabled());
+                        }
+                    }
+                });
+    }
+
+    private CompletableFuture<?> loadInputMute(int bootstrapEpoch, String inputName) {
+        return handler.<GetInputMuteResponse>submit((obs, callback) -> obs.getInputMute(inputName, callback))
+                .thenAccept(response -> {
+                    synchronized (this) {
+                        InputState input = inputs.get(inputName);
+                        if (bootstrapEpoch == epoch && input != null && input.inputMuted == null) {
+                            input.inputMuted = response.getInputMuted();
+                        }
+                    }
+                })
+                // Not every input has audio; OBS refuses GetInputMute for those.
+                .exceptionally(error -> null);
+    }
+
+    private synchronized boolean addSceneItem(int bootstrapEpoch, String sceneName, String sourceName, int sceneItemId) {
+        if (bootstrapEpoch != epoch) {
+            return false;
+        }
+        SceneState scene = scenes.computeIfAbsent(sceneName, SceneState::new);
+        scene.items.computeIfAbsent(sceneItemId, SceneItemState::new).sourceName = sourceName;
+        sceneItemCache.putSceneItemId(sceneName, sourceName, sceneItemId);
+        return true;
+    }
+
+    private SceneItemState findItem(String sceneName, int sceneItemId) {
+        SceneState scene = scenes.get(sceneName);
+        return scene == null ? null : scene.items.get(sceneItemId);
+    }
+
+    /**
+     * Forgets everything; the next {@link #bootstrap()} starts over. Replies still in flight are ignored.
+     */
+    synchronized void clear() {
+        Map<String, Boolean> known = getInputMuteStates();
+        if (!known.isEmpty()) {
+            lastInputMuteStates = known;
+        }
+        epoch++;
+        synced = false;
+        scenes.clear();
+        inputs.clear();
+        currentProgramScene = null;
+        currentPreviewScene = null;
+        studioModeEnabled = null;
+    }
+
+    @Override
+    public synchronized void onEvent(OBSEvent event) {
+        Map<String, Object> data = event.getData();
+        switch (event.getType()) {
+            case OBSEvent.INPUT_MUTE_STATE_CHANGED:
+                inputs.computeIfAbsent((String) data.get("inputName"), InputState::new).inputMuted = (Boolean) data.get("inputMuted");
+                break;
+            case OBSEvent.CURRENT_PROGRAM_SCENE_CHANGED:
+                currentProgramScene = (String) data.get("sceneName");
+                break;
+            case OBSEvent.CURRENT_PREVIEW_SCENE_CHANGED:
+                currentPreviewScene = (String) data.get("sceneName");
+                break;
+            case OBSEvent.SCENE_ITEM_ENABLE_STATE_CHANGED:
+                SceneState scene = scenes.computeIfAbsent((String) data.get("sceneName"), SceneState::new);
+                scene.items.computeIfAbsent((Integer) data.get("sceneItemId"), SceneItemState::new).sceneItemEnabled =
+                        (Boolean) data.get("sceneItemEnabled");
+                break;
+            case OBSEvent.STUDIO_MODE_STATE_CHANGED:
+                studioModeEnabled = (Boolean) data.get("studioModeEnabled");
+                break;
+            default:
+                break;
+        }
+    }
+
+    synchronized void onSceneCreated(String sceneName) {
+        scenes.computeIfAbsent(sceneName, SceneState::new);
+    }
+
+    synchronized void onSceneRemoved(String sceneName) {
+        scenes.remove(sceneName);
+    }
+
+    synchronized void onSceneNameChanged(String oldSceneName, String sceneName) {
+        SceneState scene = scenes.remove(oldSceneName);
+        if (scene != null) {
+            scene.sceneName = sceneName;
+            scenes.put(sceneName, scene);
+            for (SceneItemState item : scene.items.values()) {
+                primeCache(sceneName, item);
+            }
+        }
+    }
+
+    void onSceneItemCreated(String sceneName, String sourceName, int sceneItemId) {
+        int currentEpoch;
+        synchronized (this) {
+            currentEpoch = epoch;
+        }
+        if (addSceneItem(currentEpoch, sceneName, sourceName, sceneItemId)) {
+            loadSceneItemEnabled(currentEpoch, sceneName, sceneItemId);
+        }
+    }
+
+    synchronized void onSceneItemRemoved(String sceneName, int sceneItemId) {
+        SceneState scene = scenes.get(sceneName);
+        if (scene != null) {
+            scene.items.remove(sceneItemId);
+        }
+    }
+
+    void onInputCreated(String inputName, String inputKind) {
+        int currentEpoch;
+        synchronized (this) {
+            currentEpoch = epoch;
+            inputs.computeIfAbsent(inputName, InputState::new).inputKind = inputKind;
+        }
+        loadInputMute(currentEpoch, inputName);
+    }
+
+    synchronized void onInputRemoved(String inputName) {
+        inputs.remove(inputName);
+    }
+
+    synchronized void onInputNameChanged(String oldInputName, String inputName) {
+        InputState input = inputs.remove(oldInputName);
+        if (input != null) {
+            input.inputName = inputName;
+            inputs.put(inputName, input);
+        }
+        for (SceneState scene : scenes.values()) {
+            for (SceneItemState item : scene.items.values()) {
+                if (oldInputName.equals(item.sourceName)) {
+                    item.sourceName = inputName;
+                }
+                primeCache(scene.sceneName, item);
+            }
+        }
+    }
+
+    private void primeCache(String sceneName, SceneItemState item) {
+        if (item.sourceName != null) {
+            sceneItemCache.putSceneItemId(sceneName, item.sourceName, item.sceneItemId);
+        }
+        if (item.sceneItemEnabled != null) {
+            sceneItemCache.putSceneItemEnabled(sceneName, item.sceneItemId, item.sceneItemEnabled);
+        }
+    }
+
+    /**
+     * Returns the last known mute state, or null when the mirror doesn't know it (yet).
+     */
+    public synchronized Boolean getInputMuted(String inputName) {
+        InputState input = inputs.get(inputName);
+        return input == null ? null : input.inputMuted;
+    }
+
+    /**
+     * Mute state by input name for every input whose state is known, i.e. the inputs that have audio.
+     */
+    public synchronized Map<String, Boolean> getInputMuteStates() {
+        Map<String, Boolean> states = new LinkedHashMap<>();
+        for (InputState input : inputs.values()) {
+            if (input.inputMuted != null) {
+                states.put(input.inputName, input.inputMuted);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Like {@link #getInputMuteStates()}, but falls back to the states known before the connection last dropped
+     * while the mirror is empty, e.g. during a reconnect. Empty only if OBS was never mirrored.
+     */
+    public synchronized Map<String, Boolean> getLastKnownInputMuteStates() {
+        Map<String, Boolean> states = getInputMuteStates();
+        return states.isEmpty() ? new LinkedHashMap<>(lastInputMuteStates) : states;
+    }
+
+    /**
+     * Records a mute state we just asked OBS for, so a second press before the event arrives flips it back.
+     */
+    synchronized void putInputMuted(String inputName, Boolean muted) {
+        inputs.computeIfAbsent(inputName, InputState::new).inputMuted = muted;
+    }
+
+    synchronized void forgetInputMuteStates() {
+        for (InputState input : inputs.values()) {
+            input.inputMuted = null;
+        }
+    }
+
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * A copy of the mirrored state, shaped for JSON: scenes in OBS order with their items, inputs by name.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("synced", synced);
+        state.put("studioModeEnabled", studioModeEnabled);
+        state.put("currentProgramScene", currentProgramScene);
+        state.put("currentPreviewScene", currentPreviewScene);
+
+        List<SceneState> orderedScenes = new ArrayList<>(scenes.values());
+        orderedScenes.sort(Comparator.comparing((SceneState scene) -> scene.index, Comparator.nullsLast(Comparator.reverseOrder())));
+        List<Map<String, Object>> sceneList = new ArrayList<>();
+        for (SceneState scene : orderedScenes) {
+            Map<String, Object> sceneData = new LinkedHashMap<>();
+            sceneData.put("sceneName", scene.sceneName);
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (SceneItemState item : scene.items.values()) {
+                Map<String, Object> itemData = new LinkedHashMap<>();
+                itemData.put("sceneItemId", item.sceneItemId);
+                itemData.put("sourceName", item.sourceName);
+                itemData.put("sceneItemEnabled", item.sceneItemEnabled);
+                items.add(itemData);
+            }
+            sceneData.put("sceneItems", items);
+            sceneList.add(sceneData);
+        }
+        state.put("scenes", sceneList);
+
+        List<Map<String, Object>> inputList = new ArrayList<>();
+        for (InputState input : inputs.values()) {
+            Map<String, Object> inputData = new LinkedHashMap<>();
+            inputData.put("inputName", input.inputName);
+            inputData.put("inputKind", input.inputKind);
+            inputData.put("inputMuted", input.inputMuted);
+            inputList.add(inputData);
+        }
+        state.put("inputs", inputList);
+        return state;
+    }
+
+    private static class SceneState {
+        private String sceneName;
+        private Integer index;
+        private final Map<Integer, SceneItemState> items = new TreeMap<>();
+
+        SceneState(String sceneName) {
+            this.sceneName = sceneName;
+        }
+    }
+
+    private static class SceneItemState {
+        private final int sceneItemId;
+        private String sourceName;
+        private Boolean sceneItemEnabled;
+
+        SceneItemState(int sceneItemId) {
+            this.sceneItemId = sceneItemId;
+        }
+    }
+
+    private static class InputState {
+        private String inputName;
+        private String inputKind;
+        private Boolean inputMuted;
+
+        InputState(String inputName) {
+            this.inputName = inputName;
+        }
+    }
+}
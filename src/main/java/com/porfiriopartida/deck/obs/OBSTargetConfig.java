@@ -0,0 +1,73 @@
+package com.porfiriopartida.deck.obs;
+
+import com.porfiriopartida.deck.config.Constants;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Contents of obs-targets.json: the OBS instances the deck controls, keyed by a short name, and the one commands
+ * go to when they don't name a target.
+ */
+public class OBSTargetConfig {
+    public static final String DEFAULT_TARGET = "main";
+
+    private String defaultTarget;
+    private Map<String, Target> targets;
+
+    public OBSTargetConfig(String defaultTarget, Map<String, Target> targets) {
+        this.defaultTarget = defaultTarget;
+        this.targets = targets;
+    }
+
+    /**
+     * The local OBS on the default port, without authentication; used when no targets file exists.
+     */
+    public static OBSTargetConfig local() {
+        Map<String, Target> targets = new LinkedHashMap<>();
+        targets.put(DEFAULT_TARGET, new Target(Constants.LOCALHOST, Constants.OBS_PORT, null));
+        return new OBSTargetConfig(DEFAULT_TARGET, targets);
+    }
+
+    /**
+     * The configured default, or the first target when none is named.
+     */
+    public String getDefaultTarget() {
+        if (defaultTarget != null) {
+            return defaultTarget;
+        }
+        return getTargets().isEmpty() ? null : getTargets().keySet().iterator().next();
+    }
+
+    public Map<String, Target> getTargets() {
+        return targets == null ? Collections.emptyMap() : targets;
+    }
+
+    public static class Target {
+        private String host;
+        private Integer port;
+        private String password;
+
+        public Target(String host, Integer port, String password) {
+            this.host = host;
+            this.port = port;
+            this.password = password;
+        }
+
+        public String getHost() {
+            return host == null ? Constants.LOCALHOST : host;
+        }
+
+        public int getPort() {
+            return port == null ? Constants.OBS_PORT : port;
+        }
+
+        /**
+         * Null when unset or blank (as in the shipped file): connect without authentication.
+         */
+        public String getPassword() {
+            return password == null || password.isEmpty() ? null : password;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.porfiriopartida.deck.obs;
+
+import com.porfiriopartida.exception.ConfigurationValidationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The OBS instances the deck controls, one {@link OBSHandler} (and so one supervised connection) per named target.
+ * <p>
+ * Commands pick their targets with a leading {@code @name}, {@code @name,other} or {@code @*} in their parameters
+ * (see {@link #route(String)}); without one they go to the default target, so a single-instance setup behaves
+ * exactly as before.
+ */
+public class OBSTargets {
+    private static final Logger logger = LogManager.getLogger(OBSTargets.class);
+    public static final String ALL = "*";
+
+    private final Map<String, OBSHandler> handlers;
+    private final String defaultTarget;
+
+    public OBSTargets(Map<String, OBSHandler> handlers, String defaultTarget) {
+        if (handlers.isEmpty()) {
+            throw new IllegalArgumentException("No OBS targets configured.");
+        }
+        if (!handlers.containsKey(defaultTarget)) {
+            throw new IllegalArgumentException("Default OBS target '" + defaultTarget + "' is not configured.");
+        }
+        this.handlers = Collections.unmodifiableMap(new LinkedHashMap<>(handlers));
+        this.defaultTarget = defaultTarget;
+    }
+
+    /**
+     * Just the given handler, as the default target.
+     */
+    public static OBSTargets single(OBSHandler handler) {
+        return new OBSTargets(Collections.singletonMap(OBSTargetConfig.DEFAULT_TARGET, handler), OBSTargetConfig.DEFAULT_TARGET);
+    }
+
+    public static OBSTargets fromConfig(OBSTargetConfig config) {
+        Map<String, OBSHandler> handlers = new LinkedHashMap<>();
+        for (Map.Entry<String, OBSTargetConfig.Target> entry : config.getTargets().entrySet()) {
+            String name = entry.getKey();
+            if (name.isEmpty() || name.equals(ALL) || name.indexOf(',') >= 0 || name.indexOf(' ') >= 0) {
+                throw new IllegalArgumentException("Invalid OBS target name '" + name + "'.");
+            }
+            OBSTargetConfig.Target target = entry.getValue();
+            handlers.put(name, new OBSHandler(target.getHost(), target.getPort(), target.getPassword()));
+            logger.info("OBS target {}: {}:{}", name, target.getHost(), target.getPort());
+        }
+        return new OBSTargets(handlers, config.getDefaultTarget());
+    }
+
+    public String getDefaultName() {
+        return defaultTarget;
+    }
+
+    public OBSHandler getDefault() {
+        return handlers.get(defaultTarget);
+    }
+
+    public OBSHandler get(String name) {
+        return handlers.get(name);
+    }
+
+    /**
+     * Handlers by target name, in configuration order.
+     */
+    public Map<String, OBSHandler> getAll() {
+        return handlers;
+    }
+
+    public int size() {
+        return handlers.size();
+    }
+
+    public void connectAll() throws IOException, ConfigurationValidationException {
+        for (OBSHandler handler : handlers.values()) {
+            handler.connect();
+        }
+    }
+
+    public void disconnectAll() {
+        for (OBSHandler handler : handlers.values()) {
+            handler.disconnect();
+        }
+    }
+
+    /**
+     * Subscribes to every target's events; with more than one target each event carries the name of its target.
+     */
+    public void addEventListener(OBSEventListener listener) {
+        for (Map.Entry<String, OBSHandler> entry : handlers.entrySet()) {
+            String name = entry.getKey();
+            entry.getValue().addEventListener(handlers.size() == 1 ? listener
+                    : event -> listener.onEvent(event.withTarget(name)));
+        }
+    }
+
+    /**
+     * Splits the target prefix off a command's parameters.
+     *
+     * @throws IllegalArgumentException when a named target isn't configured
+     */
+    public Route route(String parameters) {
+        String remaining = parameters == null ? "" : parameters;
+        if (!remaining.startsWith("@")) {
+            return new Route(Collections.singletonList(defaultTarget), remaining);
+        }
+        int space = remaining.indexOf(' ');
+        String selector = space < 0 ? remaining.substring(1) : remaining.substring(1, space);
+        remaining = space < 0 ? "" : remaining.substring(space + 1).trim();
+        if (selector.equals(ALL)) {
+            return new Route(new ArrayList<>(handlers.keySet()), remaining);
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : selector.split(",")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!handlers.containsKey(name)) {
+                throw new IllegalArgumentException("unknown OBS target '" + name + "'");
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("no OBS target named");
+        }
+        return new Route(names, remaining);
+    }
+
+    /**
+     * Where a command goes and what is left of its parameters.
+     */
+    public static class Route {
+        private final List<String> targets;
+        private final String parameters;
+
+        private Route(List<String> targets, String parameters) {
+            this.targets = targets;
+            this.parameters = parameters;
+        }
+
+        public List<String> getTargets() {
+            return targets;
+        }
+
+        public String getParameters() {
+            return parameters;
+        }
+
+        public boolean isSingle() {
+            return targets.size() == 1;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.porfiriopartida.deck.obs;
+
+import io.obswebsocket.community.client.message.event.inputs.InputNameChangedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemCreatedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemEnableStateChangedEvent;
+import io.obswebsocket.community.client.message.event.sceneitems.SceneItemRemovedEvent;
+import io.obswebsocket.community.client.message.event.scenes.SceneNameChangedEvent;
+import io.obswebsocket.community.client.message.event.scenes.SceneRemovedEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers (scene, source) -> sceneItemId and the last known enabled state of each scene item, so toggles
+ * only need the final write. Entries are kept honest by the OBS scene item events and dropped on disconnect.
+ */
+public class SceneItemCache {
+    private static final Logger logger = LogManager.getLogger(SceneItemCache.class);
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final Map<String, Integer> itemIds = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> enabledStates = new ConcurrentHashMap<>();
+
+    public Integer getSceneItemId(String sceneName, String sourceName) {
+        return itemIds.get(key(sceneName, sourceName));
+    }
+
+    public void putSceneItemId(String sceneName, String sourceName, Number sceneItemId) {
+        itemIds.put(key(sceneName, sourceName), sceneItemId.intValue());
+    }
+
+    public Boolean getSceneItemEnabled(String sceneName, int sceneItemId) {
+        return enabledStates.get(key(sceneName, sceneItemId));
+    }
+
+    public void putSceneItemEnabled(String sceneName, int sceneItemId, boolean enabled) {
+        enabledStates.put(key(sceneName, sceneItemId), enabled);
+    }
+
+    public void invalidateSceneItem(String sceneName, String sourceName, int sceneItemId) {
+        itemIds.remove(key(sceneName, sourceName));
+        enabledStates.remove(key(sceneName, sceneItemId));
+    }
+
+    public void invalidateScene(String sceneName) {
+        String prefix = sceneName + KEY_SEPARATOR;
+        itemIds.keySet().removeIf(k -> k.startsWith(prefix));
+        enabledStates.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    public void clear() {
+        itemIds.clear();
+        enabledStates.clear();
+    }
+
+    public void onSceneItemCreated(SceneItemCreatedEvent event) {
+        putSceneItemId(event.getSceneName(), event.getSourceName(), event.getSceneItemId());
+    }
+
+    public void onSceneItemRemoved(SceneItemRemovedEvent event) {
+        invalidateSceneItem(event.getSceneName(), event.getSourceName(), event.getSceneItemId().intValue());
+    }
+
+    public void onSceneItemEnableStateChanged(SceneItemEnableStateChangedEvent event) {
+        putSceneItemEnabled(event.getSceneName(), event.getSceneItemId().intValue(), event.getSceneItemEnabled());
+    }
+
+    public void onSceneRemoved(SceneRemovedEvent event) {
+        invalidateScene(event.getSceneName());
+    }
+
+    public void onSceneNameChanged(SceneNameChangedEvent event) {
+        invalidateScene(event.getOldSceneName());
+    }
+
+    public void onInputNameChanged(InputNameChangedEvent event) {
+        // Source names are part of the id key; renames are rare so just start over.
+        logger.debug("Input {} renamed to {}, clearing scene item cache.", event.getOldInputName(), event.getInputName());
+        itemIds.clear();
+    }
+
+    private static String key(String sceneName, Object item) {
+        return sceneName + KEY_SEPARATOR + item;
+    }
+}
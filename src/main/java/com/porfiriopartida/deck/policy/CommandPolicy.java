@@ -0,0 +1,120 @@
+package com.porfiriopartida.deck.policy;
+
+import com.google.gson.annotations.SerializedName;
+import com.porfiriopartida.deck.command.CommandPriority;
+import com.porfiriopartida.deck.config.Constants;
+
+/**
+ * How presses of one command are admitted, as read from policies.json. Unset fields inherit the defaults entry.
+ * <ul>
+ * <li>{@code debounceMs}: repeats of the same command and parameters within this window are dropped</li>
+ * <li>{@code coalesce}: {@code parity} collapses presses that arrive while one is running into a single follow-up
+ * when their count is odd (toggles), {@code latest} always runs only the last one. Presses from every client count
+ * together; emergency commands run parity presses one at a time instead of folding them</li>
+ * <li>{@code ratePerSecond}/{@code burst}: token bucket per client and command</li>
+ * <li>{@code maxInFlight}/{@code maxQueued}: concurrent runs per command and presses allowed to wait for one</li>
+ * <li>{@code priority}: {@code emergency}, {@code interactive} or {@code background}, replacing the lane the
+ * command was registered with</li>
+ * </ul>
+ */
+public class CommandPolicy {
+    public enum Coalesce {
+        @SerializedName("none") NONE,
+        @SerializedName("parity") PARITY,
+        @SerializedName("latest") LATEST
+    }
+
+    // maxQueued only matters once a command gets a lane, so the base value is a sane bound rather than zero.
+    static final CommandPolicy UNRESTRICTED = new CommandPolicy(0L, Coalesce.NONE, 0d, 0, 0, Constants.POLICY_MAX_QUEUED, null);
+
+    private Long debounceMs;
+    private Coalesce coalesce;
+    private Double ratePerSecond;
+    private Integer burst;
+    private Integer maxInFlight;
+    private Integer maxQueued;
+    private CommandPriority priority;
+
+    public CommandPolicy(Long debounceMs, Coalesce coalesce, Double ratePerSecond, Integer burst, Integer maxInFlight,
+                         Integer maxQueued, CommandPriority priority) {
+        this.debounceMs = debounceMs;
+        this.coalesce = coalesce;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.priority = priority;
+    }
+
+    /**
+     * Fills every unset field from the given policy, which must itself be complete.
+     */
+    CommandPolicy withDefaults(CommandPolicy defaults) {
+        return new CommandPolicy(
+                debounceMs != null ? debounceMs : defaults.debounceMs,
+                coalesce != null ? coalesce : defaults.coalesce,
+                ratePerSecond != null ? ratePerSecond : defaults.ratePerSecond,
+                burst != null ? burst : defaults.burst,
+                maxInFlight != null ? maxInFlight : defaults.maxInFlight,
+                maxQueued != null ? maxQueued : defaults.maxQueued,
+                priority != null ? priority : defaults.priority);
+    }
+
+    /**
+     * The same policy running presses one at a time without folding any of them.
+     */
+    CommandPolicy serialized() {
+        return new CommandPolicy(debounceMs, Coalesce.NONE, ratePerSecond, burst, 1, maxQueued, priority);
+    }
+
+    public long getDebounceMs() {
+        return debounceMs;
+    }
+
+    public Coalesce getCoalesce() {
+        return coalesce;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Bucket size; defaults to one second worth of tokens when not configured.
+     */
+    public int getBurst() {
+        return burst > 0 ? burst : (int) Math.max(1, Math.ceil(ratePerSecond));
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * The configured priority, or null to keep the one the command was registered with.
+     */
+    public CommandPriority getPriority() {
+        return priority;
+    }
+
+    boolean isRateLimited() {
+        return ratePerSecond > 0;
+    }
+
+    /**
+     * Whether presses need a lane at all: debouncing, coalescing or a concurrency limit.
+     */
+    boolean needsLane() {
+        return debounceMs > 0 || coalesce != Coalesce.NONE || maxInFlight > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "debounceMs=" + debounceMs + ", coalesce=" + coalesce + ", ratePerSecond=" + ratePerSecond
+                + ", burst=" + burst + ", maxInFlight=" + maxInFlight + ", maxQueued=" + maxQueued + ", priority=" + priority;
+    }
+}
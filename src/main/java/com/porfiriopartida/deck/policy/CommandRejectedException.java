@@ -0,0 +1,12 @@
+package com.porfiriopartida.deck.policy;
+
+/**
+ * Completes a press the dispatch policy refused (rate limited or queue full); clients should back off and retry.
+ */
+public class CommandRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CommandRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,242 @@
+package com.porfiriopartida.deck.policy;
+
+import com.porfiriopartida.deck.command.CommandPriority;
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import com.porfiriopartida.deck.networking.DeckClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sits between the command registry and the handlers and decides, per press, whether a command runs now, waits,
+ * is folded into another press or is refused. See {@link CommandPolicy} for the knobs.
+ * <p>
+ * Commands that debounce, coalesce or limit concurrency get a lane: per command name for a concurrency limit,
+ * otherwise per command and parameters, so {@code ToggleMute Mic} and {@code ToggleMute Desktop} never fold into
+ * each other. A coalescing lane runs at most one press at a time, which also keeps repeated toggles from racing.
+ * Lanes are shared by all clients, so presses from different clients fold into each other just like repeats from one.
+ * {@link CommandPriority#EMERGENCY} commands are never folded by parity: two presses there are a deliberate on and
+ * off (or a second client undoing the first), so they run one after the other instead.
+ * <p>
+ * Every press still gets a reply: its handler's, or {@code BUSY:}, {@code debounced} or {@code coalesced}.
+ */
+public class DispatchPolicy {
+    private static final Logger logger = LogManager.getLogger(DispatchPolicy.class);
+    public static final String METRIC_OUTCOMES = "obsdeck_policy_outcomes_total";
+    private static final int MAX_IDLE_LANES = 1024;
+
+    private volatile PolicyConfig config;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, TokenBucket>> buckets = new ConcurrentHashMap<>();
+    private final MetricsRegistry metrics;
+
+    public DispatchPolicy(PolicyConfig config) {
+        this(config, MetricsRegistry.getDefault());
+    }
+
+    public DispatchPolicy(PolicyConfig config, MetricsRegistry metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Swaps in new policies. Buckets restart full; presses already waiting keep the policy they were admitted with.
+     */
+    public void setConfig(PolicyConfig config) {
+        this.config = config;
+        buckets.clear();
+    }
+
+    public PolicyConfig getConfig() {
+        return config;
+    }
+
+    public void forgetClient(String clientId) {
+        buckets.remove(clientId);
+    }
+
+    public CompletableFuture<?> submit(DeckClient client, String name, String parameters, CommandPriority priority,
+                                       Supplier<CompletableFuture<?>> execute) {
+        CommandPolicy policy = config.policyFor(name);
+        if (priority == CommandPriority.EMERGENCY && policy.getCoalesce() == CommandPolicy.Coalesce.PARITY) {
+            policy = policy.serialized();
+        }
+        if (policy.isRateLimited() && !bucketFor(client.getId(), name, policy).tryAcquire()) {
+            return reject(client, name, "rate limited");
+        }
+        if (!policy.needsLane()) {
+            return execute.get();
+        }
+        boolean limitsCommand = policy.getCoalesce() == CommandPolicy.Coalesce.NONE && policy.getMaxInFlight() > 0;
+        String key = limitsCommand ? name : name + ' ' + parameters;
+        Lane lane = lanes.get(key);
+        if (lane == null) {
+            if (lanes.size() >= MAX_IDLE_LANES) {
+                evictIdleLanes();
+            }
+            lane = lanes.computeIfAbsent(key, ignored -> new Lane(name));
+        }
+        return lane.submit(policy, new Press(client, execute));
+    }
+
+    private TokenBucket bucketFor(String clientId, String name, CommandPolicy policy) {
+        return buckets.computeIfAbsent(clientId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, command -> new TokenBucket(policy.getRatePerSecond(), policy.getBurst()));
+    }
+
+    private CompletableFuture<?> reject(DeckClient client, String name, String reason) {
+        record("rejected_" + reason.replace(' ', '_'));
+        client.send("BUSY:" + name + " (" + reason + ")");
+        CompletableFuture<?> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(CommandReplies.reported(new CommandRejectedException(name + " " + reason)));
+        return rejected;
+    }
+
+    private void record(String outcome) {
+        metrics.counter(METRIC_OUTCOMES, "outcome", outcome).increment();
+    }
+
+    /**
+     * Drops lanes that hold no state worth keeping. A press racing with this may end up in a fresh lane, which at
+     * worst costs one debounce or coalescing opportunity.
+     */
+    private void evictIdleLanes() {
+        long now = System.nanoTime();
+        for (Iterator<Lane> iterator = lanes.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isIdle(now)) {
+                iterator.remove();
+            }
+        }
+        logger.debug("{} dispatch lane(s) left after eviction.", lanes.size());
+    }
+
+    private enum Admission { RUN, WAIT, DEBOUNCED, FULL }
+
+    private static final class Press {
+        private final DeckClient client;
+        private final Supplier<CompletableFuture<?>> execute;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Press(DeckClient client, Supplier<CompletableFuture<?>> execute) {
+            this.client = client;
+            this.execute = execute;
+        }
+    }
+
+    private final class Lane {
+        private final String name;
+        private boolean accepted;
+        private long lastAcceptedNanos;
+        private long debounceNanos;
+        private int running;
+        // Presses waiting for a run slot (no coalescing) or absorbed while one runs (coalescing).
+        private final Deque<Press> waiting = new ArrayDeque<>();
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        private CompletableFuture<?> submit(CommandPolicy policy, Press press) {
+            Admission admission;
+            synchronized (this) {
+                long now = System.nanoTime();
+                debounceNanos = TimeUnit.MILLISECONDS.toNanos(policy.getDebounceMs());
+                int maxRunning = policy.getCoalesce() != CommandPolicy.Coalesce.NONE ? 1 : policy.getMaxInFlight();
+                if (accepted && debounceNanos > 0 && now - lastAcceptedNanos < debounceNanos) {
+                    admission = Admission.DEBOUNCED;
+                } else if (maxRunning <= 0 || running < maxRunning) {
+                    running++;
+                    admission = Admission.RUN;
+                } else if (waiting.size() < policy.getMaxQueued()) {
+                    waiting.add(press);
+                    admission = Admission.WAIT;
+                } else {
+                    admission = Admission.FULL;
+                }
+                if (admission != Admission.DEBOUNCED && admission != Admission.FULL) {
+                    accepted = true;
+                    lastAcceptedNanos = now;
+                }
+            }
+            switch (admission) {
+                case RUN:
+                    run(policy, press);
+                    return press.result;
+                case WAIT:
+                    return press.result;
+                case DEBOUNCED:
+                    record("debounced");
+                    press.client.send(name + " debounced.");
+                    press.result.complete(null);
+                    return press.result;
+                default:
+                    return reject(press.client, name, "queue full");
+            }
+        }
+
+        private void run(CommandPolicy policy, Press press) {
+            CompletableFuture<?> execution;
+            try {
+                execution = press.execute.get();
+            } catch (RuntimeException e) {
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                execution = failed;
+            }
+            execution.whenComplete((value, error) -> {
+                if (error != null) {
+                    press.result.completeExceptionally(error);
+                } else {
+                    press.result.complete(value);
+                }
+                onFinished(policy);
+            });
+        }
+
+        private void onFinished(CommandPolicy policy) {
+            Press next;
+            List<Press> absorbed = Collections.emptyList();
+            synchronized (this) {
+                if (policy.getCoalesce() == CommandPolicy.Coalesce.NONE) {
+                    next = waiting.poll();
+                } else {
+                    next = null;
+                    int count = waiting.size();
+                    if (count > 0) {
+                        boolean runLast = policy.getCoalesce() == CommandPolicy.Coalesce.LATEST || count % 2 == 1;
+                        next = runLast ? waiting.pollLast() : null;
+                        absorbed = new ArrayList<>(waiting);
+                        waiting.clear();
+                    }
+                }
+                if (next == null) {
+                    running--;
+                }
+            }
+            for (Press press : absorbed) {
+                record("coalesced");
+                press.client.send(name + " coalesced.");
+                press.result.complete(null);
+            }
+            if (next != null) {
+                run(policy, next);
+            }
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return running == 0 && waiting.isEmpty() && (!accepted || now - lastAcceptedNanos >= debounceNanos);
+        }
+    }
+}
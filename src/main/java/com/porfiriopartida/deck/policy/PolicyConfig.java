@@ -0,0 +1,53 @@
+package com.porfiriopartida.deck.policy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Contents of policies.json: a {@code defaults} policy and per command overrides keyed by command name.
+ */
+public class PolicyConfig {
+    private CommandPolicy defaults;
+    private Map<String, CommandPolicy> commands;
+    private transient volatile Map<String, CommandPolicy> resolved;
+    private transient volatile CommandPolicy resolvedDefaults;
+
+    public PolicyConfig(CommandPolicy defaults, Map<String, CommandPolicy> commands) {
+        this.defaults = defaults;
+        this.commands = commands;
+    }
+
+    /**
+     * No limits at all; used until a policies file has been read.
+     */
+    public static PolicyConfig unrestricted() {
+        return new PolicyConfig(null, Collections.emptyMap());
+    }
+
+    public CommandPolicy policyFor(String command) {
+        Map<String, CommandPolicy> policies = resolved;
+        if (policies == null) {
+            policies = resolve();
+        }
+        CommandPolicy policy = policies.get(command);
+        return policy != null ? policy : resolvedDefaults;
+    }
+
+    private synchronized Map<String, CommandPolicy> resolve() {
+        if (resolved == null) {
+            CommandPolicy base = defaults == null ? CommandPolicy.UNRESTRICTED : defaults.withDefaults(CommandPolicy.UNRESTRICTED);
+            Map<String, CommandPolicy> policies = new HashMap<>();
+            if (commands != null) {
+                for (Map.Entry<String, CommandPolicy> entry : commands.entrySet()) {
+                    if (entry.getValue() != null) {
+                        policies.put(entry.getKey(), entry.getValue().withDefaults(base));
+                    }
+                }
+            }
+            resolvedDefaults = base;
+            resolved = policies;
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,104 @@
+package com.porfiriopartida.deck.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the config directory and calls the listener registered for a file name when it is created or modified.
+ * Events are collected for a short settle window first, so an editor's burst of writes triggers one reload.
+ */
+public class ConfigWatcher {
+    private static final Logger logger = LogManager.getLogger(ConfigWatcher.class);
+    private static final long SETTLE_MILLIS = 200L;
+
+    private final Path directory;
+    private final Map<String, Runnable> listeners = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    public ConfigWatcher(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    public void onChange(String fileName, Runnable listener) {
+        listeners.put(fileName, listener);
+    }
+
+    public synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warn("Config hot reload disabled, cannot watch {}: {}", directory, e.getMessage());
+            return;
+        }
+        Thread thread = new Thread(this::watchLoop, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        watchService = null;
+    }
+
+    private void watchLoop() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<String> changed = new HashSet<>();
+                collect(key, changed);
+                Thread.sleep(SETTLE_MILLIS);
+                while ((key = service.poll()) != null) {
+                    collect(key, changed);
+                }
+                for (String fileName : changed) {
+                    Runnable listener = listeners.get(fileName);
+                    if (listener == null) {
+                        continue;
+                    }
+                    logger.info("Config file changed: {}", fileName);
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Reloading {} failed.", fileName, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Config watcher stopped.");
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed.addAll(listeners.keySet());
+            } else {
+                changed.add(((Path) event.context()).getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+}
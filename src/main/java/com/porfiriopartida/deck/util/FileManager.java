@@ -1,32 +1,101 @@
 package com.porfiriopartida.deck.util;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.porfiriopartida.deck.application.Main;
 import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.config.Constants;
+import com.porfiriopartida.deck.obs.OBSTargetConfig;
+import com.porfiriopartida.deck.policy.PolicyConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.lang.reflect.Type;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FileManager {
     private static final Logger logger = LogManager.getLogger(FileManager.class);
+    public static final String COMMANDS_FILE = "commands.json";
+    public static final String MACROS_FILE = "macros.json";
+    public static final String POLICIES_FILE = "policies.json";
+    public static final String OBS_TARGETS_FILE = "obs-targets.json";
+    public static final String ICONS_DIR = "icons";
+    public static final String CONFIG_DIR_PROPERTY = "obsdeck.config.dir";
+    public static final String CONFIG_DIR_ENV = "OBS_DECK_CONFIG_DIR";
 
+    private static final Gson gson = new Gson();
+    private static final Type COMMAND_LIST_TYPE = new TypeToken<ArrayList<Command>>(){}.getType();
+    private static final Type MACRO_MAP_TYPE = new TypeToken<LinkedHashMap<String, ArrayList<Command>>>(){}.getType();
+    private static volatile String configDirectory;
+    private static String overrideDirectory;
+
+    private static final AtomicReference<List<Command>> pendingSave = new AtomicReference<>();
+    private static final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns the config directory, resolving and creating it on first use. Overrides are checked in order:
+     * {@link #setConfigDirectoryPath(String)} (the --config-dir flag), the {@value #CONFIG_DIR_PROPERTY} system
+     * property and the {@value #CONFIG_DIR_ENV} environment variable; otherwise it is the config folder next to the JAR.
+     */
     public static String getConfigDirectoryPath() {
+        String directory = configDirectory;
+        if (directory == null) {
+            synchronized (FileManager.class) {
+                directory = configDirectory;
+                if (directory == null) {
+                    directory = resolveConfigDirectory();
+                    new File(directory).mkdirs();
+                    logger.info("Config directory: {}", directory);
+                    configDirectory = directory;
+                }
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Overrides the config directory; must be called before anything reads or writes config files.
+     */
+    public static synchronized void setConfigDirectoryPath(String directory) {
+        configDirectory = null;
+        overrideDirectory = directory;
+    }
+
+    private static String resolveConfigDirectory() {
+        if (overrideDirectory != null && !overrideDirectory.isEmpty()) {
+            return overrideDirectory;
+        }
+        String fromProperty = System.getProperty(CONFIG_DIR_PROPERTY);
+        if (fromProperty != null && !fromProperty.isEmpty()) {
+            return fromProperty;
+        }
+        String fromEnv = System.getenv(CONFIG_DIR_ENV);
+        if (fromEnv != null && !fromEnv.isEmpty()) {
+            return fromEnv;
+        }
         try {
             // Get the path of the JAR file
             String jarPath = Main.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
             // Convert the path to a File object and get the parent directory
             String baseDir = new File(jarPath).getParentFile().getPath();
             // Append the 'config' directory to the base path
-            String configDirPath = baseDir + File.separator + "config";
-            // Ensure the config directory exists
-            new File(configDirPath).mkdirs();
-            return configDirPath;
+            return baseDir + File.separator + "config";
         } catch (URISyntaxException e) {
             e.printStackTrace();
             // Fallback to current directory if there's an error
@@ -34,31 +103,188 @@ public class FileManager {
         }
     }
 
+    /**
+     * Queues a save on the background writer. Saves requested within {@link Constants#SAVE_COALESCE_DELAY} of each
+     * other are written once, with the latest list.
+     */
+    public static void saveCommandsAsync(List<Command> commands) {
+        List<Command> snapshot = new ArrayList<>(commands);
+        if (pendingSave.getAndSet(snapshot) == null) {
+            saveExecutor.schedule(FileManager::writePendingSave, Constants.SAVE_COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes any queued save right away; called before the process exits.
+     */
+    public static void flushPendingSaves() {
+        try {
+            saveExecutor.submit(FileManager::writePendingSave).get(Constants.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.error("Flushing pending save failed.", e);
+        }
+    }
+
+    private static void writePendingSave() {
+        List<Command> commands = pendingSave.getAndSet(null);
+        if (commands != null) {
+            saveCommandsToFile(commands);
+        }
+    }
+
+    /**
+     * Writes the catalog to a temp file, fsyncs it and atomically swaps it in, keeping the previous versions as
+     * commands.json.1 .. commands.json.N, so a crash mid-save never leaves a half written catalog behind.
+     */
     public static void saveCommandsToFile(List<Command> commands) {
-        String filePath = getConfigDirectoryPath() + File.separator + "commands.json";
-        logger.debug(String.format("Saving Commands: %s", filePath));
-        Gson gson = new Gson();
-        try (FileWriter writer = new FileWriter(filePath)) {
-            gson.toJson(commands, writer);
+        Path target = Paths.get(getConfigDirectoryPath(), COMMANDS_FILE);
+        logger.debug(String.format("Saving Commands: %s", target));
+        try {
+            writeAtomically(target, gson.toJson(commands).getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Saving commands failed, previous file left untouched.", e);
         }
     }
+
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        rotateBackups(target);
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void rotateBackups(Path target) throws IOException {
+        if (!Files.exists(target) || Constants.CONFIG_BACKUPS <= 0) {
+            return;
+        }
+        String name = target.getFileName().toString();
+        Files.deleteIfExists(target.resolveSibling(name + "." + Constants.CONFIG_BACKUPS));
+        for (int i = Constants.CONFIG_BACKUPS - 1; i >= 1; i--) {
+            Path backup = target.resolveSibling(name + "." + i);
+            if (Files.exists(backup)) {
+                Files.move(backup, target.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        // Copy rather than move so the live file exists at every point of the save.
+        Files.copy(target, target.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Parses commands.json. Returns null when the file is missing or unreadable so callers keep what they already have.
+     */
     public static List<Command> loadCommandsFromFile() {
-        String filePath = getConfigDirectoryPath() + File.separator + "commands.json";
-        File commandsFile = new File(filePath);
+        File commandsFile = getConfigFile(COMMANDS_FILE);
+        if (commandsFile == null) {
+            return null;
+        }
+
+        try (FileReader reader = new FileReader(commandsFile)) {
+            List<Command> commands = gson.fromJson(reader, COMMAND_LIST_TYPE);
+            if (commands == null) {
+                commands = new ArrayList<>();
+            }
+
+            return commands;
+        } catch (IOException | JsonParseException e) {
+            logger.error("Couldn't read commands file.", e);
+            return null;
+        }
+    }
+
+    public static Map<String, List<Command>> loadMacrosFromFile() {
+        File macrosFile = getConfigFile(MACROS_FILE);
+        if (macrosFile == null) {
+            return new LinkedHashMap<>();
+        }
 
-        if(!commandsFile.exists()){
+        try (FileReader reader = new FileReader(macrosFile)) {
+            Map<String, List<Command>> macros = gson.fromJson(reader, MACRO_MAP_TYPE);
+            if (macros == null) {
+                macros = new LinkedHashMap<>();
+            }
+
+            return macros;
+        } catch (IOException | JsonParseException e) {
+            logger.error("Couldn't read macros file.", e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Where command icons are looked up by the name in {@link Command#getIcon()}.
+     */
+    public static Path getIconsDirectory() {
+        return Paths.get(getConfigDirectoryPath(), ICONS_DIR);
+    }
+
+    /**
+     * Reads the dispatch policies; a missing file means no limits, an unreadable one returns null.
+     */
+    public static PolicyConfig loadPoliciesFromFile() {
+        File policiesFile = getConfigFile(POLICIES_FILE);
+        if (policiesFile == null || policiesFile.length() == 0) {
+            return PolicyConfig.unrestricted();
+        }
+
+        try (FileReader reader = new FileReader(policiesFile)) {
+            PolicyConfig policies = gson.fromJson(reader, PolicyConfig.class);
+            return policies == null ? PolicyConfig.unrestricted() : policies;
+        } catch (IOException | JsonParseException e) {
+            logger.error("Couldn't read policies file.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the OBS instances to control; a missing file means the local OBS, an unreadable one returns null.
+     */
+    public static OBSTargetConfig loadOBSTargetsFromFile() {
+        File targetsFile = getConfigFile(OBS_TARGETS_FILE);
+        if (targetsFile == null || targetsFile.length() == 0) {
+            return OBSTargetConfig.local();
+        }
+
+        try (FileReader reader = new FileReader(targetsFile)) {
+            OBSTargetConfig targets = gson.fromJson(reader, OBSTargetConfig.class);
+            return targets == null ? OBSTargetConfig.local() : targets;
+        } catch (IOException | JsonParseException e) {
+            logger.error("Couldn't read OBS targets file.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the config file next to the JAR, seeding it from the bundled default the first time.
+     */
+    private static File getConfigFile(String fileName) {
+        String filePath = getConfigDirectoryPath() + File.separator + fileName;
+        File configFile = new File(filePath);
+
+        if(!configFile.exists()){
             try {
-                commandsFile.createNewFile();
+                configFile.createNewFile();
 
                 ClassLoader classLoader = FileManager.class.getClassLoader();
-                try (InputStream inputStream = classLoader.getResourceAsStream("config" + File.separator+ "commands.json")) {
+                try (InputStream inputStream = classLoader.getResourceAsStream("config/" + fileName)) {
                     if (inputStream == null) {
                         return null;
                     }
                     // Create output stream to destination file outside JAR
-                    try (OutputStream outputStream = new FileOutputStream(commandsFile)) {
+                    try (OutputStream outputStream = new FileOutputStream(configFile)) {
                         // Copy contents from input stream to output stream
                         byte[] buffer = new byte[1024];
                         int bytesRead;
@@ -67,28 +293,14 @@ public class FileManager {
                         }
                         logger.info("File copied successfully.");
                     } catch (IOException e) {
-                        logger.error("Error writing commands default file.", e);
+                        logger.error("Error writing " + fileName + " default file.", e);
                     }
                 }
             } catch (IOException e) {
-                logger.warn("Couldn't create commands file.");
+                logger.warn("Couldn't create " + fileName + " file.");
             }
         }
-
-        Gson gson = new Gson();
-        try (FileReader reader = new FileReader(commandsFile)) {
-            Type listType = new TypeToken<ArrayList<Command>>(){}.getType();
-
-            List<Command> commands = gson.fromJson(reader, listType);
-            if (commands == null) {
-                commands = new ArrayList<>();
-            }
-
-            return commands;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
-        }
+        return configFile;
     }
 
 }
@@ -0,0 +1,168 @@
+package com.porfiriopartida.ui;
+
+import com.porfiriopartida.deck.command.CatalogDelta;
+import com.porfiriopartida.deck.command.Command;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The catalog as shown in the command list, optionally narrowed by a search filter.
+ * <p>
+ * Unlike {@link DefaultListModel} it swaps whole snapshots in place and tells the list with one or two range events
+ * instead of one per element, and typing further into the filter only searches the rows that still match. Swing
+ * thread only.
+ */
+public class CommandListModel extends AbstractListModel<Command> {
+    private static final long serialVersionUID = 1L;
+
+    private List<Entry> all = Collections.emptyList();
+    private List<Entry> visible = Collections.emptyList();
+    private String filter = "";
+    private final Map<UUID, CommandStatus> statuses = new HashMap<>();
+
+    @Override
+    public int getSize() {
+        return visible.size();
+    }
+
+    @Override
+    public Command getElementAt(int index) {
+        return visible.get(index).command;
+    }
+
+    /**
+     * Replaces the whole catalog, e.g. after a full resync.
+     */
+    public void setCommands(List<Command> commands) {
+        List<Entry> entries = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            entries.add(new Entry(command));
+        }
+        all = entries;
+        show(matching(all, filter));
+    }
+
+    /**
+     * Applies a catalog change; removed and changed commands keep their position, added ones go last.
+     */
+    public void applyDelta(CatalogDelta delta) {
+        Set<UUID> removed = new HashSet<>(delta.getRemoved());
+        Map<UUID, Command> changed = new HashMap<>();
+        for (Command command : delta.getChanged()) {
+            changed.put(command.getUuid(), command);
+        }
+        List<Entry> entries = new ArrayList<>(all.size() + delta.getAdded().size());
+        for (Entry entry : all) {
+            UUID uuid = entry.command.getUuid();
+            if (removed.contains(uuid)) {
+                statuses.remove(uuid);
+                continue;
+            }
+            Command update = changed.get(uuid);
+            entries.add(update == null ? entry : new Entry(update));
+        }
+        for (Command command : delta.getAdded()) {
+            entries.add(new Entry(command));
+        }
+        all = entries;
+        show(matching(all, filter));
+    }
+
+    /**
+     * Shows only commands whose label, command or parameters contain the text, ignoring case; blank shows all.
+     */
+    public void setFilter(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) {
+            return;
+        }
+        // A longer filter containing the old one can only match rows that already match.
+        List<Entry> candidates = normalized.contains(filter) ? visible : all;
+        filter = normalized;
+        show(matching(candidates, normalized));
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public CommandStatus getStatus(UUID uuid) {
+        return statuses.get(uuid);
+    }
+
+    /**
+     * Records the command's latest run status (null clears it) and repaints its row if shown.
+     */
+    public void setStatus(UUID uuid, CommandStatus status) {
+        if (status == null) {
+            statuses.remove(uuid);
+        } else {
+            statuses.put(uuid, status);
+        }
+        int index = indexOf(uuid);
+        if (index >= 0) {
+            fireContentsChanged(this, index, index);
+        }
+    }
+
+    /**
+     * Row of the command with the given id, or -1 when it isn't shown.
+     */
+    public int indexOf(UUID uuid) {
+        for (int i = 0; i < visible.size(); i++) {
+            if (Objects.equals(visible.get(i).command.getUuid(), uuid)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Entry> matching(List<Entry> entries, String filter) {
+        if (filter.isEmpty()) {
+            return entries;
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.searchText.contains(filter)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private void show(List<Entry> rows) {
+        int oldSize = visible.size();
+        int newSize = rows.size();
+        visible = rows;
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        if (Math.min(oldSize, newSize) > 0) {
+            fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+        }
+    }
+
+    private static final class Entry {
+        private final Command command;
+        // Lower-cased once per catalog change rather than on every keystroke.
+        private final String searchText;
+
+        private Entry(Command command) {
+            this.command = command;
+            this.searchText = (command.getLabel() + '\n' + command.getCommand() + '\n'
+                    + (command.getParameters() == null ? "" : command.getParameters())).toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.porfiriopartida.ui;
 
+import com.porfiriopartida.deck.command.CatalogDelta;
+import com.porfiriopartida.deck.command.CatalogSnapshot;
 import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandReplies;
 import com.porfiriopartida.deck.config.Constants;
 import com.porfiriopartida.deck.networking.ServerListener;
 import com.porfiriopartida.deck.util.FileManager;
@@ -10,24 +13,50 @@ import org.apache.logging.log4j.Logger;
 import org.junit.platform.commons.util.StringUtils;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.time.Year;
-import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 
 public class CommandManagerUI {
     private static final Logger logger = LogManager.getLogger(CommandManagerUI.class);
+    private static final int STATUS_FADE_DELAY = 3000;
 
     private JFrame frame;
     private JList<Command> commandList;
-    private DefaultListModel<Command> commandListModel;
-    private ServerListener serverListener;
+    private CommandListModel commandListModel;
+    private JTextField filterField;
+    private final CustomCellRenderer cellRenderer = new CustomCellRenderer();
+    private final Consumer<ServerListener> serverSetup;
+    private volatile ServerListener serverListener;
+    private long syncedVersion = -1;
+    private boolean serverStarting;
+    // Anything that may touch OBS, the disk or the network runs here, never on the event dispatch thread.
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ui-background");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public CommandManagerUI() {
+        this(server -> { });
+    }
+
+    /**
+     * The setup is applied to every server the window starts, before it listens; Main passes the command line options.
+     */
+    public CommandManagerUI(Consumer<ServerListener> serverSetup) {
+        this.serverSetup = serverSetup;
         initialize();
     }
 
@@ -47,9 +76,15 @@ public class CommandManagerUI {
     private void addCommandsPanel() {
         JPanel panel = new JPanel();
 
-        commandListModel = new DefaultListModel<>();
+        commandListModel = new CommandListModel();
         commandList = new JList<>(commandListModel);
-        commandList.setCellRenderer(new CustomCellRenderer());
+        commandList.setCellRenderer(cellRenderer);
+        // Fixed cell sizes keep layout from rendering every row; the list still stretches to the window width.
+        commandList.setPrototypeCellValue(new Command("Toggle Scene Item (Generic Scene|Camera)", "", null));
+        commandList.setFixedCellHeight(CustomCellRenderer.CELL_HEIGHT);
+        new Timer(Constants.ICON_REFRESH_INTERVAL, e -> cellRenderer.refreshIcons(commandList)).start();
+
+        addFilterField();
 
         commandList.addMouseListener(onCommandListClicked());
         frame.add(new JScrollPane(commandList), BorderLayout.CENTER);
@@ -57,6 +92,48 @@ public class CommandManagerUI {
         frame.add(panel, BorderLayout.SOUTH);
     }
 
+    private void addFilterField() {
+        filterField = new JTextField();
+        filterField.setToolTipText("Filter commands");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        frame.add(filterField, BorderLayout.NORTH);
+    }
+
+    private void applyFilter() {
+        keepingSelection(() -> commandListModel.setFilter(filterField.getText()));
+    }
+
+    /**
+     * Runs a model update and reselects the command that was selected before, wherever it ended up.
+     */
+    private void keepingSelection(Runnable update) {
+        Command selected = commandList.getSelectedValue();
+        update.run();
+        if (selected != null) {
+            int index = commandListModel.indexOf(selected.getUuid());
+            if (index < 0) {
+                commandList.clearSelection();
+            } else {
+                commandList.setSelectedIndex(index);
+            }
+        }
+    }
+
     private void addMenu() {
         JMenuBar menuBar = new JMenuBar();
         JMenu fileMenu = new JMenu("File");
@@ -96,7 +173,10 @@ public class CommandManagerUI {
 
     private ActionListener onSave() {
         return e -> {
-            FileManager.saveCommandsToFile(serverListener.getAvailableCommands());
+            // Only snapshots the catalog here; the file is written on FileManager's save thread.
+            if (serverListener != null) {
+                FileManager.saveCommandsAsync(serverListener.getAvailableCommands());
+            }
         };
     }
 
@@ -119,12 +199,27 @@ public class CommandManagerUI {
     }
 
     private void refreshCommandsList() {
-        commandListModel.clear();
+        if (serverListener == null) {
+            return;
+        }
+        CatalogSnapshot snapshot = serverListener.getCommandCatalog().snapshot();
+        CatalogDelta delta = syncedVersion < 0 ? null : snapshot.deltaSince(syncedVersion);
+        if (delta != null) {
+            applyDelta(delta);
+            return;
+        }
+        keepingSelection(() -> commandListModel.setCommands(snapshot.getCommands()));
+        syncedVersion = snapshot.getVersion();
+    }
 
-        List<Command> commandList = serverListener.getAvailableCommands();
-        for (Command c : commandList) {
-            commandListModel.addElement(c);
+    private void applyDelta(CatalogDelta delta) {
+        if (delta.getFromVersion() != syncedVersion) {
+            // Missed an intermediate change; catch up from whatever the catalog still remembers.
+            refreshCommandsList();
+            return;
         }
+        keepingSelection(() -> commandListModel.applyDelta(delta));
+        syncedVersion = delta.getToVersion();
     }
 
     private void buildAboutMenu(JMenu menu) {
@@ -140,8 +235,12 @@ public class CommandManagerUI {
 
     private ActionListener onExitPressed() {
         return e -> {
-            try{ serverListener.stop(); } catch (Exception ex){ ex.printStackTrace(); }
-            System.exit(0);
+            frame.setTitle("Commands Manager (stopping...)");
+            // Stopping drains clients, which can take a few seconds.
+            backgroundExecutor.execute(() -> {
+                try{ if (serverListener != null) { serverListener.stop(); } } catch (Exception ex){ ex.printStackTrace(); }
+                System.exit(0);
+            });
         };
     }
 
@@ -179,8 +278,49 @@ public class CommandManagerUI {
         };
     }
 
+    /**
+     * Runs the command in the background and shows its progress and outcome in the list.
+     */
     private void triggerCommand(Command selectedCommand) {
-        serverListener.handleCommand(selectedCommand.getCommand(), selectedCommand.getParameters());
+        ServerListener server = serverListener;
+        if (server == null) {
+            JOptionPane.showMessageDialog(frame, "Server is not running.", "Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        UUID uuid = selectedCommand.getUuid();
+        CommandStatus running = CommandStatus.running();
+        commandListModel.setStatus(uuid, running);
+        backgroundExecutor.execute(() -> {
+            CompletableFuture<?> result;
+            try {
+                result = server.handleCommand(selectedCommand.getCommand(), selectedCommand.getParameters());
+            } catch (RuntimeException e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+            result.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> finishCommand(uuid, running, error)));
+        });
+    }
+
+    private void finishCommand(UUID uuid, CommandStatus running, Throwable error) {
+        if (commandListModel.getStatus(uuid) != running) {
+            // Pressed again meanwhile; the newer run owns the status.
+            return;
+        }
+        if (error != null) {
+            // Failures stay until the command runs again.
+            commandListModel.setStatus(uuid, CommandStatus.failed(CommandReplies.describeFailure(error)));
+            return;
+        }
+        CommandStatus succeeded = CommandStatus.succeeded();
+        commandListModel.setStatus(uuid, succeeded);
+        Timer fade = new Timer(STATUS_FADE_DELAY, e -> {
+            if (commandListModel.getStatus(uuid) == succeeded) {
+                commandListModel.setStatus(uuid, null);
+            }
+        });
+        fade.setRepeats(false);
+        fade.start();
     }
 
     private void showContextMenu(MouseEvent evt) {
@@ -199,8 +339,8 @@ public class CommandManagerUI {
         Command selectedCommand = commandListModel.getElementAt(index);
 
         removeItem.addActionListener(e -> {
+            // The list model follows through the catalog listener.
             removeCommand(selectedCommand);
-            Command toRemove = commandListModel.remove(index);
         });
 
         infoItem.addActionListener(e -> {
@@ -237,7 +377,9 @@ public class CommandManagerUI {
 
     private ActionListener onConnect() {
         return e -> {
-            if (serverListener == null || !serverListener.isRunning()) {
+            if (serverStarting) {
+                JOptionPane.showMessageDialog(frame, "Server is starting.", "Error", JOptionPane.WARNING_MESSAGE);
+            } else if (serverListener == null || !serverListener.isRunning()) {
                 startServerListener();
             } else {
                 JOptionPane.showMessageDialog(frame, "Server is already running.", "Error", JOptionPane.WARNING_MESSAGE);
@@ -264,27 +406,43 @@ public class CommandManagerUI {
         });
     }
 
+    /**
+     * Creates the server (reading config and connecting to OBS) in the background; the list fills in once it's up.
+     */
     private void startServerListener() {
-
-        try {
-            serverListener = new ServerListener(false);
-
-        } catch (Exception | ConfigurationValidationException e) {
-            JOptionPane.showMessageDialog(frame, "Failed to create server: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            logger.error(e.getMessage(), e);
-            return;
-        }
-
-        new Thread(() -> {
+        serverStarting = true;
+        backgroundExecutor.execute(() -> {
+            ServerListener server;
             try {
-                serverListener.startListening(Constants.SERVICE_PORT);
-            } catch (IOException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(frame, "Failed to start server: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                server = new ServerListener(false);
+                serverSetup.accept(server);
+            } catch (Exception | ConfigurationValidationException e) {
+                logger.error(e.getMessage(), e);
+                SwingUtilities.invokeLater(() -> {
+                    serverStarting = false;
+                    JOptionPane.showMessageDialog(frame, "Failed to create server: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
                 return;
             }
-        }).start();
 
-        refreshCommandsList();
+            new Thread(() -> {
+                try {
+                    server.startListening(Constants.SERVICE_PORT);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    SwingUtilities.invokeLater(() ->
+                            JOptionPane.showMessageDialog(frame, "Failed to start server: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+                }
+            }).start();
+
+            SwingUtilities.invokeLater(() -> {
+                serverListener = server;
+                serverStarting = false;
+                cellRenderer.setIconCache(server.getIconCache());
+                server.getCommandCatalog().addListener(delta -> SwingUtilities.invokeLater(() -> applyDelta(delta)));
+                syncedVersion = -1;
+                refreshCommandsList();
+            });
+        });
     }
 }
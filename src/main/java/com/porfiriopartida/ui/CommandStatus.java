@@ -0,0 +1,36 @@
+package com.porfiriopartida.ui;
+
+/**
+ * Outcome of the last run of a command started from the list, shown next to it until it fades.
+ */
+public final class CommandStatus {
+    public enum State { RUNNING, SUCCEEDED, FAILED }
+
+    private final State state;
+    private final String message;
+
+    private CommandStatus(State state, String message) {
+        this.state = state;
+        this.message = message;
+    }
+
+    public static CommandStatus running() {
+        return new CommandStatus(State.RUNNING, null);
+    }
+
+    public static CommandStatus succeeded() {
+        return new CommandStatus(State.SUCCEEDED, null);
+    }
+
+    public static CommandStatus failed(String message) {
+        return new CommandStatus(State.FAILED, message);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -1,11 +1,67 @@
 package com.porfiriopartida.ui;
 
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.icon.IconCache;
+import com.porfiriopartida.deck.icon.IconImage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import javax.swing.*;
+import javax.swing.border.Border;
 import java.awt.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Padded list cells. The row height is fixed on the list itself (see {@link #CELL_HEIGHT}), so the renderer
+ * doesn't size itself and large catalogs are laid out without measuring every row. With a {@link CommandListModel}
+ * the last run's {@link CommandStatus} is shown after the label.
+ * <p>
+ * Command icons come from the server's {@link IconCache}. Painting only reads the icons already fetched; a row whose
+ * icon isn't fetched yet paints without it and is repainted once the loader delivers. {@link #refreshIcons(JList)}
+ * re-checks the fetched and missing icons on the loader thread so edited files show up. Swing thread only, like any
+ * renderer.
+ */
 public class CustomCellRenderer extends DefaultListCellRenderer {
-    private int desiredHeight = 30; // Desired height for each cell
-    private int padding = 5; // Desired height for each cell
+    private static final Logger logger = LogManager.getLogger(CustomCellRenderer.class);
+    public static final int CELL_HEIGHT = 30; // Desired height for each cell
+    private static final int PADDING = 5;
+    private static final Border PADDING_BORDER = BorderFactory.createEmptyBorder(PADDING, PADDING, PADDING, PADDING);
+    private static final Color SUCCEEDED_COLOR = new Color(0x2E7D32);
+    private static final Color FAILED_COLOR = new Color(0xC62828);
+    private static final int ICON_SIZE = CELL_HEIGHT - 2 * PADDING;
+
+    private IconCache iconCache;
+    // The Swing icon wrapping each name's current cache entry, rebuilt only when the cache hands out a new image.
+    private final Map<String, ShownIcon> shown = new HashMap<>();
+    private final Set<String> missing = new HashSet<>();
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * Where icons are loaded from; null shows none. Forgets icons loaded from a previous cache.
+     */
+    public void setIconCache(IconCache iconCache) {
+        this.iconCache = iconCache;
+        shown.clear();
+        missing.clear();
+        pending.clear();
+    }
+
+    /**
+     * Fetches every icon shown or found missing so far again, repainting the list for those that changed.
+     */
+    public void refreshIcons(JList<?> list) {
+        if (iconCache == null) {
+            return;
+        }
+        Set<String> names = new HashSet<>(shown.keySet());
+        names.addAll(missing);
+        for (String name : names) {
+            fetch(list, name);
+        }
+    }
 
     @Override
     public Component getListCellRendererComponent(JList<?> list, Object value, int index,
@@ -13,12 +69,91 @@ public class CustomCellRenderer extends DefaultListCellRenderer {
         // Get the default rendering component
         JLabel renderer = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 
-        // Adjust height
-        renderer.setPreferredSize(new Dimension(renderer.getPreferredSize().width, desiredHeight));
-
         // Add padding
-        renderer.setBorder(BorderFactory.createEmptyBorder(padding, padding, padding, padding)); // Add padding to all sides
+        renderer.setBorder(PADDING_BORDER);
+
+        renderer.setToolTipText(null);
+        if (value instanceof Command) {
+            renderer.setIcon(iconFor(list, ((Command) value).getIcon()));
+        }
+        if (value instanceof Command && list.getModel() instanceof CommandListModel) {
+            CommandStatus status = ((CommandListModel) list.getModel()).getStatus(((Command) value).getUuid());
+            if (status != null) {
+                showStatus(renderer, status, isSelected);
+            }
+        }
 
         return renderer;
     }
+
+    private Icon iconFor(JList<?> list, String name) {
+        if (iconCache == null || name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        ShownIcon current = shown.get(name);
+        if (current == null && !missing.contains(name)) {
+            fetch(list, name);
+        }
+        return current == null ? null : current.icon;
+    }
+
+    private void fetch(JList<?> list, String name) {
+        if (!pending.add(name)) {
+            return;
+        }
+        IconCache cache = iconCache;
+        cache.loadInBackground(name, ICON_SIZE).whenComplete((image, error) -> SwingUtilities.invokeLater(() -> {
+            if (cache != iconCache) {
+                return;
+            }
+            pending.remove(name);
+            ShownIcon current = shown.get(name);
+            if (error == null) {
+                missing.remove(name);
+                if (current == null || current.image != image) {
+                    shown.put(name, new ShownIcon(image));
+                    list.repaint();
+                }
+            } else {
+                // Not fetched again on paint, only by refreshIcons, so a missing icon doesn't retry in a loop.
+                if (missing.add(name)) {
+                    logger.debug("No icon {}: {}", name, error.getMessage());
+                }
+                if (shown.remove(name) != null) {
+                    list.repaint();
+                }
+            }
+        }));
+    }
+
+    private static void showStatus(JLabel renderer, CommandStatus status, boolean isSelected) {
+        switch (status.getState()) {
+            case RUNNING:
+                renderer.setText(renderer.getText() + "  \u2026 running");
+                break;
+            case SUCCEEDED:
+                renderer.setText(renderer.getText() + "  \u2713 done");
+                if (!isSelected) {
+                    renderer.setForeground(SUCCEEDED_COLOR);
+                }
+                break;
+            case FAILED:
+                renderer.setText(renderer.getText() + "  \u2717 failed");
+                renderer.setToolTipText(status.getMessage());
+                if (!isSelected) {
+                    renderer.setForeground(FAILED_COLOR);
+                }
+                break;
+        }
+    }
+
+    private static final class ShownIcon {
+        private final IconImage image;
+        private final Icon icon;
+
+        private ShownIcon(IconImage image) {
+            this.image = image;
+            this.icon = new ImageIcon(image.getImage());
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package com.porfiriopartida.deck.command;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandCatalogTest {
+    private final CommandCatalog catalog = new CommandCatalog();
+
+    @Test
+    void deltaSinceCurrentVersionIsEmpty() {
+        catalog.replaceAll(Collections.singletonList(command("Mute", "ToggleMute", "Mic")));
+
+        CatalogDelta delta = catalog.deltaSince(catalog.getVersion());
+
+        assertTrue(delta.isEmpty());
+        assertEquals(catalog.getVersion(), delta.getToVersion());
+    }
+
+    @Test
+    void addedThenChangedFoldsIntoOneAdd() {
+        long start = catalog.getVersion();
+        Command mute = command("Mute", "ToggleMute", "Mic");
+        catalog.replaceAll(Collections.singletonList(mute));
+        Command renamed = copy(mute, "Mute mic");
+        catalog.replaceAll(Collections.singletonList(renamed));
+
+        CatalogDelta delta = catalog.deltaSince(start);
+
+        assertEquals(start, delta.getFromVersion());
+        assertEquals(catalog.getVersion(), delta.getToVersion());
+        assertEquals(Collections.singletonList(renamed), delta.getAdded());
+        assertTrue(delta.getChanged().isEmpty());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    void addedThenRemovedCancelsOut() {
+        Command cam = command("Cam", "ToggleCamera", "");
+        catalog.replaceAll(Collections.singletonList(cam));
+        long start = catalog.getVersion();
+        Command mute = command("Mute", "ToggleMute", "Mic");
+        catalog.replaceAll(Arrays.asList(cam, mute));
+        catalog.remove(mute.getUuid());
+
+        CatalogDelta delta = catalog.deltaSince(start);
+
+        assertTrue(delta.isEmpty());
+        assertEquals(start + 2, delta.getToVersion());
+    }
+
+    @Test
+    void removedThenAddedAgainIsAChange() {
+        Command mute = command("Mute", "ToggleMute", "Mic");
+        catalog.replaceAll(Collections.singletonList(mute));
+        long start = catalog.getVersion();
+        catalog.remove(mute.getUuid());
+        Command back = copy(mute, "Mute again");
+        catalog.replaceAll(Collections.singletonList(back));
+
+        CatalogDelta delta = catalog.deltaSince(start);
+
+        assertTrue(delta.getAdded().isEmpty());
+        assertEquals(Collections.singletonList(back), delta.getChanged());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    void changedThenRemovedIsOnlyARemove() {
+        Command mute = command("Mute", "ToggleMute", "Mic");
+        catalog.replaceAll(Collections.singletonList(mute));
+        long start = catalog.getVersion();
+        catalog.replaceAll(Collections.singletonList(copy(mute, "Mute mic")));
+        catalog.remove(mute.getUuid());
+
+        CatalogDelta delta = catalog.deltaSince(start);
+
+        assertTrue(delta.getAdded().isEmpty());
+        assertTrue(delta.getChanged().isEmpty());
+        assertEquals(Collections.singletonList(mute.getUuid()), delta.getRemoved());
+    }
+
+    @Test
+    void repeatedChangesKeepTheLatest() {
+        Command mute = command("Mute", "ToggleMute", "Mic");
+        catalog.replaceAll(Collections.singletonList(mute));
+        long start = catalog.getVersion();
+        catalog.replaceAll(Collections.singletonList(copy(mute, "Mute 2")));
+        Command latest = copy(mute, "Mute 3");
+        catalog.replaceAll(Collections.singletonList(latest));
+
+        CatalogDelta delta = catalog.deltaSince(start);
+
+        assertEquals(Collections.singletonList(latest), delta.getChanged());
+    }
+
+    @Test
+    void versionsOutsideTheHistoryNeedASnapshot() {
+        catalog.replaceAll(Collections.singletonList(command("Mute", "ToggleMute", "Mic")));
+        long start = catalog.getVersion();
+        for (int i = 0; i < CommandCatalog.MAX_HISTORY; i++) {
+            catalog.replaceAll(Collections.singletonList(command("Mute " + i, "ToggleMute", "Mic")));
+        }
+
+        assertNull(catalog.deltaSince(start - 1));
+        assertNotNull(catalog.deltaSince(start));
+        assertNull(catalog.deltaSince(catalog.getVersion() + 1));
+    }
+
+    @Test
+    void reloadingTheSameFileKeepsUuidsAndVersion() {
+        catalog.replaceAll(fromDisk("Mute"));
+        List<UUID> uuids = uuids(catalog.getCommands());
+        long version = catalog.getVersion();
+
+        catalog.replaceAll(fromDisk("Mute"));
+
+        assertEquals(version, catalog.getVersion());
+        assertEquals(uuids, uuids(catalog.getCommands()));
+    }
+
+    @Test
+    void reloadingAnEditedCommandIsAChange() {
+        catalog.replaceAll(fromDisk("Mute"));
+        List<UUID> uuids = uuids(catalog.getCommands());
+        long start = catalog.getVersion();
+
+        catalog.replaceAll(fromDisk("Mute mic"));
+
+        assertEquals(uuids, uuids(catalog.getCommands()));
+        CatalogDelta delta = catalog.deltaSince(start);
+        assertTrue(delta.getAdded().isEmpty());
+        assertEquals(1, delta.getChanged().size());
+        assertEquals("Mute mic", delta.getChanged().get(0).getLabel());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    private static List<Command> fromDisk(String muteLabel) {
+        return Arrays.asList(
+                new Command(muteLabel, "ToggleMute", "mute.png", "Mic"),
+                new Command("Camera", "ToggleCamera", null, ""),
+                new Command("Camera", "ToggleCamera", null, ""));
+    }
+
+    private static Command command(String label, String command, String parameters) {
+        Command created = new Command(label, command, null, parameters);
+        created.setUuid();
+        return created;
+    }
+
+    private static Command copy(Command original, String label) {
+        Command copy = new Command(label, original.getCommand(), original.getIcon(), original.getParameters());
+        copy.setUuid(original.getUuid());
+        return copy;
+    }
+
+    private static List<UUID> uuids(List<Command> commands) {
+        List<UUID> uuids = new ArrayList<>();
+        for (Command command : commands) {
+            uuids.add(command.getUuid());
+        }
+        return uuids;
+    }
+}
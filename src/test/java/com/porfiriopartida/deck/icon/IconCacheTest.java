@@ -0,0 +1,111 @@
+package com.porfiriopartida.deck.icon;
+
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IconCacheTest {
+    private Path root;
+    private Path icons;
+    private IconCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createTempDirectory("icon-cache-test");
+        icons = Files.createDirectories(root.resolve("icons"));
+        writeImage(icons.resolve("mute.png"), 128);
+        Files.createDirectories(icons.resolve("scenes"));
+        writeImage(icons.resolve("scenes/camera.png"), 32);
+        writeImage(root.resolve("secret.png"), 16);
+        cache = new IconCache(icons, 8, 256, new MetricsRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        cache.shutdown();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void rejectsNamesOutsideTheIconsDirectory() {
+        for (String name : new String[]{"../secret.png", "scenes/../../secret.png", "..", "", ".", "scenes/..",
+                root.resolve("secret.png").toString()}) {
+            CompletableFuture<IconImage> load = cache.load(name, 64);
+
+            assertTrue(load.isCompletedExceptionally(), name);
+            assertTrue(failure(load) instanceof IllegalArgumentException, name);
+        }
+    }
+
+    @Test
+    void allowsSubdirectoriesAndRedundantSegments() {
+        assertEquals(32, cache.load("scenes/camera.png", 64).join().getImage().getWidth());
+        assertEquals(32, cache.load("scenes/../scenes/camera.png", 64).join().getImage().getWidth());
+    }
+
+    @Test
+    void missingIconsFailWithFileNotFound() {
+        assertTrue(failure(cache.load("nope.png", 64)) instanceof FileNotFoundException);
+    }
+
+    @Test
+    void scalesDownButNeverUp() {
+        assertEquals(64, cache.load("mute.png", 64).join().getImage().getWidth());
+        assertEquals(128, cache.load("mute.png", 200).join().getImage().getWidth());
+        assertEquals(32, cache.load("scenes/camera.png", 64).join().getImage().getWidth());
+    }
+
+    @Test
+    void clampsTheRequestedSize() {
+        assertEquals(1, cache.load("mute.png", 0).join().getSize());
+        assertEquals(256, cache.load("mute.png", 4096).join().getSize());
+    }
+
+    @Test
+    void servesRepeatsFromTheCache() {
+        IconImage first = cache.load("mute.png", 64).join();
+
+        assertSame(first, cache.load("mute.png", 64).join());
+        assertSame(first, cache.loadInBackground("mute.png", 64).join());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    void picksUpEditedFiles() throws IOException {
+        IconImage first = cache.load("mute.png", 64).join();
+        writeImage(icons.resolve("mute.png"), 48);
+        Files.setLastModifiedTime(icons.resolve("mute.png"), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        IconImage second = cache.load("mute.png", 64).join();
+
+        assertNotSame(first, second);
+        assertEquals(48, second.getImage().getWidth());
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        return error.getCause();
+    }
+
+    private static void writeImage(Path file, int size) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        ImageIO.write(image, "png", file.toFile());
+    }
+}
@@ -0,0 +1,83 @@
+package com.porfiriopartida.deck.macro;
+
+import com.porfiriopartida.deck.command.Command;
+import com.porfiriopartida.deck.command.CommandHandler;
+import com.porfiriopartida.deck.command.CommandRegistry;
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MacroStepTest {
+    private final CommandHandler toggleMute = (client, parameters) -> CommandReplies.done();
+    private CommandRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new CommandRegistry(new MetricsRegistry());
+        registry.register("ToggleMute", toggleMute);
+    }
+
+    @Test
+    void parsesDelayInMillis() {
+        MacroStep step = MacroStep.compile(new Command("DELAY 250"), registry);
+
+        assertTrue(step.isDelay());
+        assertEquals(250, step.getDelayMillis());
+        assertNull(step.getHandler());
+    }
+
+    @Test
+    void toleratesSpacesAroundDelay() {
+        MacroStep step = MacroStep.compile(new Command("  DELAY   40 "), registry);
+
+        assertTrue(step.isDelay());
+        assertEquals(40, step.getDelayMillis());
+    }
+
+    @Test
+    void rejectsInvalidOrNegativeDelays() {
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command("DELAY soon"), registry));
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command("DELAY -5"), registry));
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command("DELAY"), registry));
+    }
+
+    @Test
+    void resolvesCommandHandlerAndParameters() {
+        MacroStep step = MacroStep.compile(new Command("Mute mic", " ToggleMute ", null, "Mic"), registry);
+
+        assertFalse(step.isDelay());
+        assertEquals("ToggleMute", step.getCommand());
+        assertEquals("Mic", step.getParameters());
+        assertSame(toggleMute, step.getHandler());
+    }
+
+    @Test
+    void missingParametersBecomeEmpty() {
+        MacroStep step = MacroStep.compile(new Command("ToggleMute"), registry);
+
+        assertEquals("", step.getParameters());
+    }
+
+    @Test
+    void rejectsUnknownAndEmptyCommands() {
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command("NoSuchCommand"), registry));
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command("  "), registry));
+        assertThrows(IllegalArgumentException.class, () -> MacroStep.compile(new Command((String) null), registry));
+    }
+
+    @Test
+    void planCompilesEveryStepInOrder() {
+        MacroPlan plan = MacroPlan.compile("Intro", Arrays.asList(
+                new Command("ToggleMute"), new Command("DELAY 100"), new Command("ToggleMute")), registry);
+
+        assertEquals("Intro", plan.getName());
+        assertEquals(3, plan.getSteps().size());
+        assertTrue(plan.getSteps().get(1).isDelay());
+        assertThrows(UnsupportedOperationException.class, () -> plan.getSteps().clear());
+    }
+}
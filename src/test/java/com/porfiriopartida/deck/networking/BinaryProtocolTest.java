@@ -0,0 +1,143 @@
+package com.porfiriopartida.deck.networking;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTest {
+
+    @Test
+    void resultRoundTrips() throws IOException {
+        List<BinaryProtocol.Frame> frames = readAll(BinaryProtocol.result(7, BinaryProtocol.STATUS_OK, "Toggle Mute executed."));
+
+        assertEquals(1, frames.size());
+        BinaryProtocol.Frame frame = frames.get(0);
+        assertEquals(BinaryProtocol.RESULT, frame.getType());
+        assertEquals(7, frame.getCorrelationId());
+        ByteBuffer payload = frame.getPayload();
+        assertEquals(BinaryProtocol.STATUS_OK, payload.get());
+        assertEquals("Toggle Mute executed.", BinaryProtocol.text(payload));
+    }
+
+    @Test
+    void correlationIdUsesAllSixteenBits() throws IOException {
+        List<BinaryProtocol.Frame> frames = readAll(BinaryProtocol.message(0xFFFE, "hi"));
+
+        assertEquals(0xFFFE, frames.get(0).getCorrelationId());
+    }
+
+    @Test
+    void readReturnsNullAtEndOfStream() throws IOException {
+        assertNull(BinaryProtocol.read(new DataInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    void readRejectsFramesShorterThanTheHeader() {
+        byte[] data = {0, 1, BinaryProtocol.PING};
+        assertThrows(IOException.class, () -> BinaryProtocol.read(new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    @Test
+    void longResultIsSplitIntoContinuedFrames() throws IOException {
+        String text = repeat("h\u00e9llo\u20ac", 30000);
+
+        List<BinaryProtocol.Frame> frames = readAll(BinaryProtocol.result(2, 9, BinaryProtocol.STATUS_OK, text));
+
+        assertTrue(frames.size() > 1);
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int i = 0; i < frames.size(); i++) {
+            BinaryProtocol.Frame frame = frames.get(i);
+            assertEquals(9, frame.getCorrelationId());
+            boolean last = i == frames.size() - 1;
+            assertEquals(last ? BinaryProtocol.RESULT : BinaryProtocol.CONTINUED, frame.getType());
+            ByteBuffer payload = frame.getPayload();
+            if (last) {
+                assertEquals(BinaryProtocol.STATUS_OK, payload.get());
+            }
+            assembled.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+        assertEquals(text, new String(assembled.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void longMessageIsSplitIntoContinuedFrames() throws IOException {
+        String text = repeat("x", BinaryProtocol.MAX_FRAME_LENGTH * 2);
+
+        List<BinaryProtocol.Frame> frames = readAll(BinaryProtocol.message(2, 3, text));
+
+        assertEquals(3, frames.size());
+        assertEquals(BinaryProtocol.CONTINUED, frames.get(0).getType());
+        assertEquals(BinaryProtocol.CONTINUED, frames.get(1).getType());
+        assertEquals(BinaryProtocol.MESSAGE, frames.get(2).getType());
+    }
+
+    @Test
+    void textThatJustFitsStaysInOneFrame() throws IOException {
+        String text = repeat("x", BinaryProtocol.MAX_FRAME_LENGTH - 3 - 1);
+
+        List<BinaryProtocol.Frame> frames = readAll(BinaryProtocol.result(2, 1, BinaryProtocol.STATUS_OK, text));
+
+        assertEquals(1, frames.size());
+        assertEquals(BinaryProtocol.RESULT, frames.get(0).getType());
+    }
+
+    @Test
+    void versionOneGetsTooLargeInsteadOfContinuedFrames() throws IOException {
+        String text = repeat("x", BinaryProtocol.MAX_FRAME_LENGTH);
+
+        List<BinaryProtocol.Frame> result = readAll(BinaryProtocol.result(1, 4, BinaryProtocol.STATUS_OK, text));
+        List<BinaryProtocol.Frame> message = readAll(BinaryProtocol.message(1, 4, text));
+
+        assertEquals(1, result.size());
+        assertEquals(BinaryProtocol.STATUS_TOO_LARGE, result.get(0).getPayload().get());
+        assertEquals(1, message.size());
+        assertEquals(BinaryProtocol.MESSAGE, message.get(0).getType());
+        assertTrue(BinaryProtocol.text(message.get(0).getPayload()).startsWith("Message too large"));
+    }
+
+    @Test
+    void commandIdsListsNamesByIdAndTruncatesOnCharacterBoundaries() throws IOException {
+        String longName = repeat("\u20ac", 100);
+
+        ByteBuffer payload = readAll(BinaryProtocol.commandIds(5, Arrays.asList("ToggleMute", longName))).get(0).getPayload();
+
+        assertEquals(0, payload.getShort());
+        byte[] first = new byte[payload.get() & 0xFF];
+        payload.get(first);
+        assertEquals("ToggleMute", new String(first, StandardCharsets.UTF_8));
+        assertEquals(1, payload.getShort());
+        byte[] second = new byte[payload.get() & 0xFF];
+        payload.get(second);
+        assertEquals(255, second.length);
+        assertEquals(repeat("\u20ac", 85), new String(second, StandardCharsets.UTF_8));
+        assertFalse(payload.hasRemaining());
+    }
+
+    private static List<BinaryProtocol.Frame> readAll(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        List<BinaryProtocol.Frame> frames = new ArrayList<>();
+        BinaryProtocol.Frame frame;
+        while ((frame = BinaryProtocol.read(in)) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
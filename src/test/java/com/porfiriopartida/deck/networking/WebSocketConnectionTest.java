@@ -0,0 +1,173 @@
+package com.porfiriopartida.deck.networking;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketConnectionTest {
+    private static final byte[] MASK = {0x12, 0x34, 0x56, 0x78};
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    @Test
+    void decodesAMaskedTextFrame() throws IOException {
+        WebSocketConnection connection = connection(false, frame(true, false, WebSocketConnection.OP_TEXT, text("ToggleMute Mic\n")));
+
+        assertEquals("ToggleMute Mic", connection.readMessage());
+        assertNull(connection.readMessage());
+    }
+
+    @Test
+    void decodesSixteenBitLengths() throws IOException {
+        String line = repeat("x", 1000);
+        WebSocketConnection connection = connection(false, frame(true, false, WebSocketConnection.OP_TEXT, text(line)));
+
+        assertEquals(line, connection.readMessage());
+    }
+
+    @Test
+    void joinsFragmentsAndAnswersPingsInBetween() throws IOException {
+        WebSocketConnection connection = connection(false,
+                frame(false, false, WebSocketConnection.OP_TEXT, text("Toggle")),
+                frame(true, false, WebSocketConnection.OP_PING, text("hi")),
+                frame(true, false, WebSocketConnection.OP_CONTINUATION, text("Mute Mic")));
+
+        assertEquals("ToggleMute Mic", connection.readMessage());
+        byte[] pong = written.toByteArray();
+        assertEquals(0x80 | WebSocketConnection.OP_PONG, pong[0] & 0xFF);
+        assertEquals(2, pong[1]);
+        assertEquals("hi", new String(pong, 2, 2, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void inflatesCompressedMessages() throws IOException {
+        WebSocketConnection connection = connection(true, frame(true, true, WebSocketConnection.OP_TEXT, deflate(text("GET_STATE"))));
+
+        assertEquals("GET_STATE", connection.readMessage());
+    }
+
+    @Test
+    void closeFrameEndsTheStreamAndIsEchoed() throws IOException {
+        WebSocketConnection connection = connection(false, frame(true, false, WebSocketConnection.OP_CLOSE, new byte[]{0x03, (byte) 0xE9}));
+
+        assertNull(connection.readMessage());
+        assertEquals(WebSocketConnection.CLOSE_GOING_AWAY, closeCode());
+    }
+
+    @Test
+    void rejectsUnmaskedFrames() {
+        byte[] unmasked = {(byte) (0x80 | WebSocketConnection.OP_TEXT), 2, 'h', 'i'};
+
+        assertClosedWith(connection(false, unmasked), WebSocketConnection.CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    void rejectsNegativeSixtyFourBitLengths() {
+        byte[] frame = {(byte) (0x80 | WebSocketConnection.OP_TEXT), (byte) (0x80 | 127),
+                (byte) 0x80, 0, 0, 0, 0, 0, 0, 1};
+
+        assertClosedWith(connection(false, frame), WebSocketConnection.CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    void rejectsMessagesOverTheLimit() {
+        byte[] frame = {(byte) (0x80 | WebSocketConnection.OP_TEXT), (byte) (0x80 | 127), 0, 0, 0, 0, 0, 1, 0, 1};
+
+        assertClosedWith(connection(false, frame), WebSocketConnection.CLOSE_TOO_BIG);
+    }
+
+    @Test
+    void rejectsFragmentsAddingUpOverTheLimit() {
+        byte[] half = new byte[40 * 1024];
+        WebSocketConnection connection = connection(false,
+                frame(false, false, WebSocketConnection.OP_TEXT, half),
+                frame(true, false, WebSocketConnection.OP_CONTINUATION, half));
+
+        assertClosedWith(connection, WebSocketConnection.CLOSE_TOO_BIG);
+    }
+
+    @Test
+    void rejectsBinaryMessages() {
+        assertClosedWith(connection(false, frame(true, false, WebSocketConnection.OP_BINARY, new byte[]{1})),
+                WebSocketConnection.CLOSE_UNSUPPORTED_DATA);
+    }
+
+    @Test
+    void rejectsContinuationWithoutAMessage() {
+        assertClosedWith(connection(false, frame(true, false, WebSocketConnection.OP_CONTINUATION, text("x"))),
+                WebSocketConnection.CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    void rejectsCompressionThatWasNotNegotiated() {
+        assertClosedWith(connection(false, frame(true, true, WebSocketConnection.OP_TEXT, deflate(text("x")))),
+                WebSocketConnection.CLOSE_PROTOCOL_ERROR);
+    }
+
+    private WebSocketConnection connection(boolean compression, byte[]... frames) {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            input.write(frame, 0, frame.length);
+        }
+        return new WebSocketConnection(null, new Socket(), new ByteArrayInputStream(input.toByteArray()), written,
+                8, compression);
+    }
+
+    private void assertClosedWith(WebSocketConnection connection, int code) {
+        assertThrows(IOException.class, connection::readMessage);
+        assertEquals(code, closeCode());
+    }
+
+    private int closeCode() {
+        byte[] frame = written.toByteArray();
+        assertEquals(0x80 | WebSocketConnection.OP_CLOSE, frame[0] & 0xFF);
+        return ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+    }
+
+    private static byte[] frame(boolean fin, boolean compressed, int opcode, byte[] payload) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write((fin ? 0x80 : 0) | (compressed ? 0x40 : 0) | opcode);
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length & 0xFF);
+        }
+        frame.write(MASK, 0, MASK.length);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ MASK[i & 3]);
+        }
+        return frame.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        byte[] trimmed = new byte[length - 4];
+        System.arraycopy(buffer, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    private static byte[] text(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package com.porfiriopartida.deck.obs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OBSTargetsTest {
+    private final OBSTargets targets = targets("streaming", "recording", "backup");
+
+    @Test
+    void withoutPrefixGoesToTheDefaultTarget() {
+        OBSTargets.Route route = targets.route("Mic");
+
+        assertEquals(Collections.singletonList("streaming"), route.getTargets());
+        assertEquals("Mic", route.getParameters());
+        assertTrue(route.isSingle());
+    }
+
+    @Test
+    void nullOrEmptyParametersGoToTheDefaultTarget() {
+        assertEquals(Collections.singletonList("streaming"), targets.route(null).getTargets());
+        assertEquals("", targets.route(null).getParameters());
+        assertEquals("", targets.route("").getParameters());
+    }
+
+    @Test
+    void namedTargetIsStrippedFromTheParameters() {
+        OBSTargets.Route route = targets.route("@recording   Desktop Audio");
+
+        assertEquals(Collections.singletonList("recording"), route.getTargets());
+        assertEquals("Desktop Audio", route.getParameters());
+    }
+
+    @Test
+    void prefixWithoutParameters() {
+        OBSTargets.Route route = targets.route("@backup");
+
+        assertEquals(Collections.singletonList("backup"), route.getTargets());
+        assertEquals("", route.getParameters());
+    }
+
+    @Test
+    void severalTargetsKeepTheirOrderWithoutDuplicates() {
+        OBSTargets.Route route = targets.route("@backup,streaming,,backup Mic");
+
+        assertEquals(Arrays.asList("backup", "streaming"), route.getTargets());
+        assertEquals("Mic", route.getParameters());
+        assertFalse(route.isSingle());
+    }
+
+    @Test
+    void starSelectsEveryTargetInConfigurationOrder() {
+        OBSTargets.Route route = targets.route("@* Mic");
+
+        assertEquals(Arrays.asList("streaming", "recording", "backup"), route.getTargets());
+        assertEquals("Mic", route.getParameters());
+    }
+
+    @Test
+    void unknownOrMissingTargetsAreRejected() {
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class, () -> targets.route("@typo Mic"));
+        assertEquals("unknown OBS target 'typo'", unknown.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> targets.route("@streaming,typo Mic"));
+        assertThrows(IllegalArgumentException.class, () -> targets.route("@ Mic"));
+        assertThrows(IllegalArgumentException.class, () -> targets.route("@, Mic"));
+    }
+
+    @Test
+    void defaultTargetMustBeConfigured() {
+        Map<String, OBSHandler> handlers = Collections.singletonMap("streaming", handler());
+
+        assertThrows(IllegalArgumentException.class, () -> new OBSTargets(handlers, "recording"));
+        assertThrows(IllegalArgumentException.class, () -> new OBSTargets(Collections.emptyMap(), "streaming"));
+    }
+
+    @Test
+    void configRejectsNamesThatCannotBeRouted() {
+        for (String name : new String[]{"*", "a,b", "a b", ""}) {
+            Map<String, OBSTargetConfig.Target> config = Collections.singletonMap(name, new OBSTargetConfig.Target(null, null, null));
+            assertThrows(IllegalArgumentException.class, () -> OBSTargets.fromConfig(new OBSTargetConfig(name, config)), name);
+        }
+    }
+
+    @Test
+    void blankPasswordMeansNoAuthentication() {
+        assertNull(new OBSTargetConfig.Target(null, null, "").getPassword());
+        assertNull(new OBSTargetConfig.Target(null, null, null).getPassword());
+        assertEquals("secret", new OBSTargetConfig.Target(null, null, "secret").getPassword());
+        assertNull(OBSTargetConfig.local().getTargets().get(OBSTargetConfig.DEFAULT_TARGET).getPassword());
+    }
+
+    private static OBSTargets targets(String... names) {
+        Map<String, OBSHandler> handlers = new LinkedHashMap<>();
+        for (String name : names) {
+            handlers.put(name, handler());
+        }
+        return new OBSTargets(handlers, names[0]);
+    }
+
+    private static OBSHandler handler() {
+        return new OBSHandler("localhost", 4455, null);
+    }
+}
@@ -0,0 +1,231 @@
+package com.porfiriopartida.deck.policy;
+
+import com.porfiriopartida.deck.command.CommandPriority;
+import com.porfiriopartida.deck.command.CommandReplies;
+import com.porfiriopartida.deck.metrics.MetricsRegistry;
+import com.porfiriopartida.deck.networking.DeckClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DispatchPolicyTest {
+    private final RecordingClient client = new RecordingClient("a");
+    private final List<CompletableFuture<Object>> runs = new ArrayList<>();
+
+    @Test
+    void withoutAPolicyEveryPressRuns() {
+        DispatchPolicy policy = policyFor("ToggleMute", new CommandPolicy(null, null, null, null, null, null, null));
+
+        press(policy, "ToggleMute", "Mic");
+        press(policy, "ToggleMute", "Mic");
+
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void debounceDropsRepeatsWithinTheWindow() {
+        DispatchPolicy policy = policyFor("Transition", new CommandPolicy(60000L, null, null, null, null, null, null));
+
+        press(policy, "Transition", "");
+        CompletableFuture<?> second = press(policy, "Transition", "");
+
+        assertEquals(1, runs.size());
+        assertTrue(second.isDone());
+        assertFalse(second.isCompletedExceptionally());
+        assertEquals(Collections.singletonList("Transition debounced."), client.messages);
+    }
+
+    @Test
+    void debounceIsPerParameters() {
+        DispatchPolicy policy = policyFor("ToggleMute", new CommandPolicy(60000L, null, null, null, null, null, null));
+
+        press(policy, "ToggleMute", "Mic");
+        press(policy, "ToggleMute", "Desktop");
+
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void parityFoldsAnEvenNumberOfWaitingPresses() {
+        DispatchPolicy policy = policyFor("ToggleMute", parity());
+
+        press(policy, "ToggleMute", "Mic");
+        CompletableFuture<?> second = press(policy, "ToggleMute", "Mic");
+        CompletableFuture<?> third = press(policy, "ToggleMute", "Mic");
+        assertEquals(1, runs.size());
+        finish(0);
+
+        assertEquals(1, runs.size());
+        assertTrue(second.isDone());
+        assertTrue(third.isDone());
+        assertEquals(2, client.count("ToggleMute coalesced."));
+    }
+
+    @Test
+    void parityRunsOnceForAnOddNumberOfWaitingPresses() {
+        DispatchPolicy policy = policyFor("ToggleMute", parity());
+
+        press(policy, "ToggleMute", "Mic");
+        press(policy, "ToggleMute", "Mic");
+        press(policy, "ToggleMute", "Mic");
+        CompletableFuture<?> last = press(policy, "ToggleMute", "Mic");
+        finish(0);
+
+        assertEquals(2, runs.size());
+        assertFalse(last.isDone());
+        finish(1);
+        assertTrue(last.isDone());
+    }
+
+    @Test
+    void parityFoldsPressesFromDifferentClients() {
+        DispatchPolicy policy = policyFor("ToggleMute", parity());
+        RecordingClient other = new RecordingClient("b");
+
+        press(policy, "ToggleMute", "Mic");
+        press(policy, client, "ToggleMute", "Mic", CommandPriority.INTERACTIVE);
+        press(policy, other, "ToggleMute", "Mic", CommandPriority.INTERACTIVE);
+        finish(0);
+
+        assertEquals(1, runs.size());
+        assertEquals(1, other.count("ToggleMute coalesced."));
+    }
+
+    @Test
+    void emergencyCommandsRunEveryPressInsteadOfFolding() {
+        DispatchPolicy policy = policyFor("ToggleAllAudio", parity());
+
+        press(policy, client, "ToggleAllAudio", "", CommandPriority.EMERGENCY);
+        press(policy, client, "ToggleAllAudio", "", CommandPriority.EMERGENCY);
+        press(policy, client, "ToggleAllAudio", "", CommandPriority.EMERGENCY);
+        assertEquals(1, runs.size());
+        finish(0);
+        assertEquals(2, runs.size());
+        finish(1);
+
+        assertEquals(3, runs.size());
+        assertEquals(0, client.count("ToggleAllAudio coalesced."));
+    }
+
+    @Test
+    void latestRunsOnlyTheLastWaitingPress() {
+        DispatchPolicy policy = policyFor("SetScene", new CommandPolicy(null, CommandPolicy.Coalesce.LATEST, null, null, null, null, null));
+
+        press(policy, "SetScene", "");
+        press(policy, "SetScene", "");
+        press(policy, "SetScene", "");
+        finish(0);
+
+        assertEquals(2, runs.size());
+        assertEquals(1, client.count("SetScene coalesced."));
+    }
+
+    @Test
+    void rateLimitRejectsWithBusy() {
+        DispatchPolicy policy = policyFor("ToggleMute", new CommandPolicy(null, null, 0.001, 1, null, null, null));
+
+        press(policy, "ToggleMute", "Mic");
+        CompletableFuture<?> rejected = press(policy, "ToggleMute", "Mic");
+
+        assertEquals(1, runs.size());
+        assertRejected(rejected);
+        assertEquals(Collections.singletonList("BUSY:ToggleMute (rate limited)"), client.messages);
+    }
+
+    @Test
+    void rateLimitIsPerClient() {
+        DispatchPolicy policy = policyFor("ToggleMute", new CommandPolicy(null, null, 0.001, 1, null, null, null));
+
+        press(policy, client, "ToggleMute", "Mic", CommandPriority.INTERACTIVE);
+        press(policy, new RecordingClient("b"), "ToggleMute", "Mic", CommandPriority.INTERACTIVE);
+
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void maxInFlightQueuesThenRejectsWhenFull() {
+        DispatchPolicy policy = policyFor("MACRO", new CommandPolicy(null, null, null, null, 1, 1, null));
+
+        press(policy, "MACRO", "Intro");
+        CompletableFuture<?> queued = press(policy, "MACRO", "Outro");
+        CompletableFuture<?> rejected = press(policy, "MACRO", "Other");
+
+        assertEquals(1, runs.size());
+        assertFalse(queued.isDone());
+        assertRejected(rejected);
+        finish(0);
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void handlerFailureFailsThePressAndFreesTheLane() {
+        DispatchPolicy policy = policyFor("ToggleMute", parity());
+
+        CompletableFuture<?> first = press(policy, "ToggleMute", "Mic");
+        runs.get(0).completeExceptionally(new IllegalStateException("OBS down"));
+        press(policy, "ToggleMute", "Mic");
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(2, runs.size());
+    }
+
+    private static CommandPolicy parity() {
+        return new CommandPolicy(null, CommandPolicy.Coalesce.PARITY, null, null, null, null, null);
+    }
+
+    private static DispatchPolicy policyFor(String command, CommandPolicy commandPolicy) {
+        return new DispatchPolicy(new PolicyConfig(null, Collections.singletonMap(command, commandPolicy)), new MetricsRegistry());
+    }
+
+    private CompletableFuture<?> press(DispatchPolicy policy, String name, String parameters) {
+        return press(policy, client, name, parameters, CommandPriority.INTERACTIVE);
+    }
+
+    private CompletableFuture<?> press(DispatchPolicy policy, DeckClient from, String name, String parameters,
+                                       CommandPriority priority) {
+        return policy.submit(from, name, parameters, priority, () -> {
+            CompletableFuture<Object> run = new CompletableFuture<>();
+            runs.add(run);
+            return run;
+        });
+    }
+
+    private void finish(int run) {
+        runs.get(run).complete(null);
+    }
+
+    private static void assertRejected(CompletableFuture<?> press) {
+        CompletionException error = assertThrows(CompletionException.class, press::join);
+        assertTrue(CommandReplies.causeOf(error) instanceof CommandRejectedException);
+    }
+
+    private static final class RecordingClient implements DeckClient {
+        private final String id;
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        private RecordingClient(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void send(String message) {
+            messages.add(message);
+        }
+
+        private int count(String message) {
+            return Collections.frequency(messages, message);
+        }
+    }
+}
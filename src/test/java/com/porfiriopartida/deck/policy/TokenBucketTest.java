@@ -0,0 +1,40 @@
+package com.porfiriopartida.deck.policy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+
+    @Test
+    void startsFullAndAllowsABurst() {
+        TokenBucket bucket = new TokenBucket(0.001, 3);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        Thread.sleep(20);
+
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void neverHoldsMoreThanItsCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 2);
+
+        Thread.sleep(20);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}